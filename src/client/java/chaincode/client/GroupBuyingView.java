@@ -0,0 +1,362 @@
+package chaincode.client;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Class: GroupBuyingView
+ *
+ * Client-side materialized view of the rules, group buyings and trade transactions of the
+ * chaincode, built from its GroupBuyingEvents chaincode events so that reads need no
+ * evaluate round trip. Feed it every chaincode event in block order, starting from the
+ * block the chaincode was deployed in; events replayed after a reconnect are ignored.
+ * Reads return immutable snapshots and may run concurrently with onEvent.
+ */
+public class GroupBuyingView {
+    public static final String EVENT_NAME = "GroupBuyingEvents";
+    //链码的参团顺序：按txID，同一批量参团内按序号
+    private static final Comparator<Participant> ADMISSION_ORDER = Comparator
+            .comparing((Participant participant) -> admissionTxID(participant.getAdmissionID()))
+            .thenComparingInt(participant -> batchIndex(participant.getAdmissionID()));
+
+    private final Map<String, Rule> rules = new ConcurrentHashMap<>();
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
+    private final Map<String, Trans> transactions = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private long blockNumber = -1;
+    private final Set<String> blockTxIds = new HashSet<>();
+
+    /**
+     * Callbacks for changes of the view, called on the thread that calls onEvent
+     */
+    public interface Listener {
+        default void onRuleChanged(Rule rule) {
+        }
+
+        /**
+         * Called once per group, when its participants reach groupNum
+         */
+        default void onGroupFilled(Group group) {
+        }
+
+        default void onTransChanged(Trans trans) {
+        }
+    }
+
+    public void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Applies one chaincode event
+     * @param blockNumber block of the transaction that emitted the event
+     * @param txId transaction that emitted the event
+     * @param eventName event name, events other than GroupBuyingEvents are ignored
+     * @param payload event payload
+     * @return whether the event changed the view
+     */
+    public synchronized boolean onEvent(final long blockNumber, final String txId, final String eventName, final byte[] payload) {
+        if (!EVENT_NAME.equals(eventName) || blockNumber < this.blockNumber) {
+            return false;
+        }
+        if (blockNumber > this.blockNumber) {
+            this.blockNumber = blockNumber;
+            blockTxIds.clear();
+        }
+        if (!blockTxIds.add(txId)) {
+            return false;
+        }
+        JSONArray events = JSONArray.parseArray(new String(payload, StandardCharsets.UTF_8));
+        for (int i = 0; i < events.size(); i++) {
+            apply(events.getJSONObject(i));
+        }
+        return true;
+    }
+
+    private void apply(final JSONObject event) {
+        switch (event.getString("type")) {
+            case "RuleOpened":
+                rule(new Rule(event.getString("discountRuleID"), true, event.getLongValue("startTime"), event.getLongValue("endTime")));
+                break;
+            case "RuleClosed":
+                rule(new Rule(event.getString("discountRuleID"), false, 0L, 0L));
+                break;
+            case "GroupCreated":
+                groups.put(event.getString("groupBuyingID"), new Group(event.getString("groupBuyingID"),
+                        event.getString("discountRuleID"), event.getString("userID"), event.getIntValue("groupNum"),
+                        event.getIntValue("currentNum"), Collections.<Participant>emptyList()));
+                break;
+            case "Participated":
+                participate(event);
+                break;
+            case "TransCreated":
+                settle(event);
+                trans(new Trans(event.getString("transID"), event.getString("discountRuleID"),
+                        event.getString("groupBuyingID"), event.getString("payee"),
+                        event.getJSONArray("payerIDs").toJavaList(String.class),
+                        event.getIntValue("receivables"), event.getIntValue("transState")));
+                break;
+            case "TransChanged":
+                Trans trans = transactions.get(event.getString("transID"));
+                if (trans != null) {
+                    trans(trans.withTransState(event.getIntValue("transState")));
+                }
+                break;
+            default:
+                //新版链码增加的事件类型，旧版视图忽略
+                break;
+        }
+    }
+
+    private void rule(final Rule rule) {
+        rules.put(rule.getDiscountRuleID(), rule);
+        for (Listener listener : listeners) {
+            listener.onRuleChanged(rule);
+        }
+    }
+
+    private void trans(final Trans trans) {
+        transactions.put(trans.getTransID(), trans);
+        for (Listener listener : listeners) {
+            listener.onTransChanged(trans);
+        }
+    }
+
+    private void participate(final JSONObject event) {
+        Group group = groups.get(event.getString("groupBuyingID"));
+        if (group == null) {
+            return;
+        }
+        boolean filled = group.isFilled();
+        //与链码一致：按参团编号排序（txID，再按批量序号）入团，超出名额的参与者不计入
+        List<Participant> participants = new ArrayList<>(group.participants);
+        participants.add(new Participant(event.getString("userID"), event.getString("admissionID"), event.getLongValue("participateTime")));
+        participants.sort(ADMISSION_ORDER);
+        Group updated = new Group(group.groupBuyingID, group.discountRuleID, group.userID, group.groupNum, group.currentNum, participants);
+        groups.put(updated.getGroupBuyingID(), updated);
+        if (!filled && updated.isFilled()) {
+            for (Listener listener : listeners) {
+                listener.onGroupFilled(updated);
+            }
+        }
+    }
+
+    /**
+     * Removes the joins InitTrans dropped because they were beyond the group size
+     */
+    private void settle(final JSONObject event) {
+        Group group = groups.get(event.getString("groupBuyingID"));
+        JSONArray dropped = event.getJSONArray("droppedAdmissionIDs");
+        if (group == null || dropped == null) {
+            return;
+        }
+        List<Participant> participants = new ArrayList<>(group.participants);
+        participants.removeIf(participant -> dropped.contains(participant.getAdmissionID()));
+        groups.put(group.groupBuyingID, new Group(group.groupBuyingID, group.discountRuleID, group.userID, group.groupNum,
+                group.currentNum, participants));
+    }
+
+    private static String admissionTxID(final String admissionID) {
+        int separator = admissionID.lastIndexOf('-');
+        return separator < 0 ? admissionID : admissionID.substring(0, separator);
+    }
+
+    private static int batchIndex(final String admissionID) {
+        int separator = admissionID.lastIndexOf('-');
+        return separator < 0 ? -1 : Integer.parseInt(admissionID.substring(separator + 1));
+    }
+
+    public Rule getRule(final String discountRuleID) {
+        return rules.get(discountRuleID);
+    }
+
+    public Group getGroup(final String groupBuyingID) {
+        return groups.get(groupBuyingID);
+    }
+
+    public Trans getTrans(final String transID) {
+        return transactions.get(transID);
+    }
+
+    /**
+     * @return the last block an event was applied from, -1 before the first event
+     */
+    public synchronized long getBlockNumber() {
+        return blockNumber;
+    }
+
+    public static final class Rule {
+        private final String discountRuleID;
+        private final boolean open;
+        private final long startTime;
+        private final long endTime;
+
+        Rule(final String discountRuleID, final boolean open, final long startTime, final long endTime) {
+            this.discountRuleID = discountRuleID;
+            this.open = open;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        public String getDiscountRuleID() {
+            return discountRuleID;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getEndTime() {
+            return endTime;
+        }
+    }
+
+    public static final class Participant {
+        private final String userID;
+        private final String admissionID;
+        private final long participateTime;
+
+        Participant(final String userID, final String admissionID, final long participateTime) {
+            this.userID = userID;
+            this.admissionID = admissionID;
+            this.participateTime = participateTime;
+        }
+
+        public String getUserID() {
+            return userID;
+        }
+
+        public String getAdmissionID() {
+            return admissionID;
+        }
+
+        public long getParticipateTime() {
+            return participateTime;
+        }
+    }
+
+    public static final class Group {
+        private final String groupBuyingID;
+        private final String discountRuleID;
+        private final String userID;
+        private final int groupNum;
+        private final int currentNum;
+        private final List<Participant> participants;
+
+        Group(final String groupBuyingID, final String discountRuleID, final String userID, final int groupNum,
+              final int currentNum, final List<Participant> participants) {
+            this.groupBuyingID = groupBuyingID;
+            this.discountRuleID = discountRuleID;
+            this.userID = userID;
+            this.groupNum = groupNum;
+            this.currentNum = currentNum;
+            this.participants = participants;
+        }
+
+        public String getGroupBuyingID() {
+            return groupBuyingID;
+        }
+
+        public String getDiscountRuleID() {
+            return discountRuleID;
+        }
+
+        public String getUserID() {
+            return userID;
+        }
+
+        public int getGroupNum() {
+            return groupNum;
+        }
+
+        /**
+         * @return admitted participants in admission order, without the initiator; a join
+         * that sorts before them can still take a place until the group is settled
+         */
+        public List<Participant> getParticipants() {
+            int capacity = Math.max(groupNum - currentNum, 0);
+            return Collections.unmodifiableList(participants.subList(0, Math.min(capacity, participants.size())));
+        }
+
+        /**
+         * @return members including the initiator, as QueryGroupBuying reports them
+         */
+        public int getCurrentNum() {
+            return currentNum + getParticipants().size();
+        }
+
+        public boolean isFilled() {
+            return getCurrentNum() >= groupNum;
+        }
+    }
+
+    public static final class Trans {
+        private final String transID;
+        private final String discountRuleID;
+        private final String groupBuyingID;
+        private final String payee;
+        private final List<String> payerIDs;
+        private final int receivables;
+        private final int transState;
+
+        Trans(final String transID, final String discountRuleID, final String groupBuyingID, final String payee,
+              final List<String> payerIDs, final int receivables, final int transState) {
+            this.transID = transID;
+            this.discountRuleID = discountRuleID;
+            this.groupBuyingID = groupBuyingID;
+            this.payee = payee;
+            this.payerIDs = Collections.unmodifiableList(payerIDs);
+            this.receivables = receivables;
+            this.transState = transState;
+        }
+
+        Trans withTransState(final int transState) {
+            return new Trans(transID, discountRuleID, groupBuyingID, payee, payerIDs, receivables, transState);
+        }
+
+        public String getTransID() {
+            return transID;
+        }
+
+        public String getDiscountRuleID() {
+            return discountRuleID;
+        }
+
+        public String getGroupBuyingID() {
+            return groupBuyingID;
+        }
+
+        public String getPayee() {
+            return payee;
+        }
+
+        public List<String> getPayerIDs() {
+            return payerIDs;
+        }
+
+        public int getReceivables() {
+            return receivables;
+        }
+
+        /**
+         * @return 0 payment pending, 1 paid, -1 defaulted
+         */
+        public int getTransState() {
+            return transState;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package chaincode;
+import org.hyperledger.fabric.contract.Context;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Function;
+
+/**
+ * Class: ContractDriver
+ *
+ * Runs contract functions against an InMemoryChaincodeStub the way ContractRouter does:
+ * a fresh context from createContext, the function, then afterTransaction. Every call
+ * gets its own transaction ID and a transaction timestamp one microsecond after the
+ * previous one, starting at START.
+ */
+public class ContractDriver {
+    public static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+
+    private final Contract contract;
+    private final InMemoryChaincodeStub stub;
+    private long txNum;
+    private Instant now = START;
+
+    public ContractDriver() {
+        this(new InMemoryChaincodeStub());
+    }
+
+    public ContractDriver(final InMemoryChaincodeStub stub) {
+        this(stub, new Contract());
+    }
+
+    /**
+     * Drives the given contract, e.g. one built with a fixed TransactionClock
+     */
+    public ContractDriver(final InMemoryChaincodeStub stub, final Contract contract) {
+        this.stub = stub;
+        this.contract = contract;
+    }
+
+    public Contract getContract() {
+        return contract;
+    }
+
+    public InMemoryChaincodeStub getStub() {
+        return stub;
+    }
+
+    /**
+     * Moves the transaction clock forward, e.g. past the end of open rules
+     */
+    public void advance(final Duration duration) {
+        now = now.plus(duration);
+    }
+
+    public <T> T invoke(final Function<Context, T> function) {
+        return invoke("tx" + (++txNum), function);
+    }
+
+    /**
+     * Runs the function as the transaction txId, e.g. to fix the admission order of joins
+     */
+    public <T> T invoke(final String txId, final Function<Context, T> function) {
+        stub.setTxId(txId);
+        now = now.plusNanos(1000);
+        stub.setTxTimestamp(now);
+        Context ctx = contract.createContext(stub);
+        contract.beforeTransaction(ctx);
+        T result = function.apply(ctx);
+        contract.afterTransaction(ctx, result);
+        return result;
+    }
+
+    /**
+     * Creates an open rule with credited buyers and orders group buyings of groupSize members
+     * under it, the first one with ID group0
+     */
+    public void openRuleWithOrders(final String discountRuleID, final int groupSize, final int orders) {
+        invoke(ctx -> contract.initRule(ctx, "seller", discountRuleID, "good", String.valueOf(groupSize), "100", "80"));
+        invoke(ctx -> contract.open(ctx, discountRuleID, "1000"));
+        for (int i = 0; i < groupSize; i++) {
+            String userID = "buyer" + i;
+            invoke(ctx -> contract.initCredit(ctx, userID));
+        }
+        for (int order = 0; order < orders; order++) {
+            String groupBuyingID = "group" + order;
+            invoke(ctx -> contract.initGroup(ctx, "buyer0", groupBuyingID, discountRuleID));
+            for (int i = 1; i < groupSize; i++) {
+                String userID = "buyer" + i;
+                invoke(ctx -> contract.participate(ctx, userID, groupBuyingID));
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package chaincode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class: CreditBenchmark
+ *
+ * Platform credit functions and the transaction queries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreditBenchmark {
+    private ContractDriver driver;
+    private Contract contract;
+    private long userNum;
+
+    @Setup
+    public void setUp() {
+        driver = new ContractDriver();
+        contract = driver.getContract();
+        driver.openRuleWithOrders("rule", 2, 1);
+        driver.invoke(ctx -> contract.initTrans(ctx, "rule", "group0"));
+        driver.invoke(ctx -> contract.initCredit(ctx, "compact"));
+    }
+
+    @Benchmark
+    public String initCredit() {
+        String userID = "user" + (++userNum);
+        return driver.invoke(ctx -> contract.initCredit(ctx, userID));
+    }
+
+    @Benchmark
+    public String changeCredit() {
+        return driver.invoke(ctx -> contract.changeCredit(ctx, "buyer0", "1"));
+    }
+
+    @Benchmark
+    public String compactCredit() {
+        driver.invoke(ctx -> contract.changeCredit(ctx, "compact", "1"));
+        return driver.invoke(ctx -> contract.compactCredit(ctx, "compact", "1000"));
+    }
+
+    @Benchmark
+    public String queryCredit() {
+        //buyer0 积累了 changeCredit 的增量，这里读取没有增量的用户
+        return driver.invoke(ctx -> contract.queryCredit(ctx, "buyer1"));
+    }
+
+    @Benchmark
+    public String changeTrans() {
+        return driver.invoke(ctx -> contract.changeTrans(ctx, "group0-rule", "1"));
+    }
+
+    @Benchmark
+    public String queryTrans() {
+        return driver.invoke(ctx -> contract.queryTrans(ctx, "group0-rule"));
+    }
+}
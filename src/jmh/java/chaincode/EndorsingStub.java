@@ -0,0 +1,254 @@
+package chaincode;
+import org.hyperledger.fabric.protos.peer.QueryResponseMetadata;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Class: EndorsingStub
+ *
+ * Simulates one endorsement against a VersionedWorldState. Reads see committed state
+ * only, and every key read (with its version), every range read and every write is
+ * recorded the way the peer builds a transaction's read-write set. As on the peer,
+ * paginated queries and writes cannot be mixed in one transaction.
+ */
+public class EndorsingStub extends ForwardingChaincodeStub {
+    private static final String MAX_UNICODE_RUNE = "\udbff\udfff";
+    private static final byte[] DELETED = new byte[0];
+
+    private final VersionedWorldState state;
+    private final String txId;
+    private final Instant txTimestamp;
+    private final Map<String, Long> reads = new LinkedHashMap<>();
+    private final List<RangeRead> rangeReads = new ArrayList<>();
+    private final Map<String, byte[]> writes = new LinkedHashMap<>();
+    private boolean paginated;
+
+    public EndorsingStub(final ChaincodeStub identity, final VersionedWorldState state, final String txId,
+                         final Instant txTimestamp) {
+        super(identity);
+        this.state = state;
+        this.txId = txId;
+        this.txTimestamp = txTimestamp;
+    }
+
+    public Map<String, Long> getReads() {
+        return reads;
+    }
+
+    public List<RangeRead> getRangeReads() {
+        return rangeReads;
+    }
+
+    /**
+     * @return written values, an empty value marks a delete
+     */
+    public Map<String, byte[]> getWrites() {
+        return writes;
+    }
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return txTimestamp;
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        VersionedWorldState.Versioned value = state.get(key);
+        if (!reads.containsKey(key)) {
+            reads.put(key, value == null ? 0L : value.getVersion());
+        }
+        return value == null ? new byte[0] : value.getValue();
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        checkWrite();
+        writes.put(key, value == null ? DELETED : value);
+    }
+
+    @Override
+    public void delState(final String key) {
+        checkWrite();
+        writes.put(key, DELETED);
+    }
+
+    private void checkWrite() {
+        if (paginated) {
+            throw new IllegalStateException("txid [" + txId + "]: the transaction contains paginated queries. Write operations are not allowed");
+        }
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        return read(startKey, endKey, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(final String startKey, final String endKey,
+                                                                                   final int pageSize, final String bookmark) {
+        if (!writes.isEmpty()) {
+            throw new IllegalStateException("txid [" + txId + "]: queries with pagination are supported only in read-only transactions");
+        }
+        paginated = true;
+        String from = bookmark == null || bookmark.isEmpty() ? startKey : bookmark;
+        return read(from, endKey, pageSize);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+        return read(compositeKey, compositeKey + MAX_UNICODE_RUNE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String objectType, final String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes).toString());
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        return getStateByPartialCompositeKey(compositeKey.toString());
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(final CompositeKey compositeKey,
+                                                                                                 final int pageSize, final String bookmark) {
+        String prefix = compositeKey.toString();
+        return getStateByRangeWithPagination(prefix, prefix + MAX_UNICODE_RUNE, pageSize, bookmark);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(final String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    private Results read(final String startKey, final String endKey, final int limit) {
+        NavigableMap<String, VersionedWorldState.Versioned> view = state.range(startKey, endKey);
+        NavigableMap<String, Long> seen = new TreeMap<>();
+        List<KeyValue> kvs = new ArrayList<>();
+        String bookmark = "";
+        for (Map.Entry<String, VersionedWorldState.Versioned> entry : view.entrySet()) {
+            if (kvs.size() == limit) {
+                bookmark = entry.getKey();
+                break;
+            }
+            seen.put(entry.getKey(), entry.getValue().getVersion());
+            kvs.add(new Entry(entry.getKey(), entry.getValue().getValue()));
+        }
+        rangeReads.add(new RangeRead(startKey, endKey, seen, bookmark.isEmpty()));
+        return new Results(kvs, QueryResponseMetadata.newBuilder()
+                .setFetchedRecordsCount(kvs.size())
+                .setBookmark(bookmark)
+                .build());
+    }
+
+    /**
+     * A range read as kept in the read set, used for phantom read validation
+     */
+    public static final class RangeRead {
+        private final String startKey;
+        private final String endKey;
+        private final NavigableMap<String, Long> seen;
+        private final boolean exhausted;
+
+        RangeRead(final String startKey, final String endKey, final NavigableMap<String, Long> seen, final boolean exhausted) {
+            this.startKey = startKey;
+            this.endKey = endKey;
+            this.seen = seen;
+            this.exhausted = exhausted;
+        }
+
+        public String getStartKey() {
+            return startKey;
+        }
+
+        public String getEndKey() {
+            return endKey;
+        }
+
+        /**
+         * @return keys and versions returned, in key order
+         */
+        public NavigableMap<String, Long> getSeen() {
+            return seen;
+        }
+
+        /**
+         * @return whether the iterator ran to the end of the range rather than stopping at a page limit
+         */
+        public boolean isExhausted() {
+            return exhausted;
+        }
+    }
+
+    private static final class Entry implements KeyValue {
+        private final String key;
+        private final byte[] value;
+
+        Entry(final String key, final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Results implements QueryResultsIterator<KeyValue>, QueryResultsIteratorWithMetadata<KeyValue> {
+        private final List<KeyValue> kvs;
+        private final QueryResponseMetadata metadata;
+
+        Results(final List<KeyValue> kvs, final QueryResponseMetadata metadata) {
+            this.kvs = kvs;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return kvs.iterator();
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
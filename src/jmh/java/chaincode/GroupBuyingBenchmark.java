@@ -0,0 +1,66 @@
+package chaincode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class: GroupBuyingBenchmark
+ *
+ * Buyer functions against a rule that already holds ordersPerRule group buyings of
+ * groupSize members each. participate joins open group buyings of the same rule and
+ * starts the next one, with one InitGroup, whenever the current one is full.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupBuyingBenchmark {
+    @Param({"2", "10", "50"})
+    public int groupSize;
+
+    @Param({"1", "100", "1000"})
+    public int ordersPerRule;
+
+    private ContractDriver driver;
+    private Contract contract;
+    private long groupNum;
+    private long openGroup;
+    private int joined;
+
+    @Setup
+    public void setUp() {
+        driver = new ContractDriver();
+        contract = driver.getContract();
+        driver.openRuleWithOrders("rule", groupSize, ordersPerRule);
+    }
+
+    @Benchmark
+    public String initGroup() {
+        String groupBuyingID = "new" + (++groupNum);
+        return driver.invoke(ctx -> contract.initGroup(ctx, "buyer0", groupBuyingID, "rule"));
+    }
+
+    @Benchmark
+    public String participate() {
+        //满员的拼单不再接受参团，每凑满一单换一个新拼单
+        if (joined % (groupSize - 1) == 0) {
+            String groupBuyingID = "open" + (++openGroup);
+            driver.invoke(ctx -> contract.initGroup(ctx, "buyer0", groupBuyingID, "rule"));
+        }
+        String userID = "buyer" + (1 + joined++ % (groupSize - 1));
+        String groupBuyingID = "open" + openGroup;
+        return driver.invoke(ctx -> contract.participate(ctx, userID, groupBuyingID));
+    }
+
+    @Benchmark
+    public String queryGroupBuying() {
+        return driver.invoke(ctx -> contract.queryGroupBuying(ctx, "group0"));
+    }
+
+    @Benchmark
+    public String queryParticipation() {
+        return driver.invoke(ctx -> contract.queryParticipation(ctx, "rule", "20", ""));
+    }
+}
@@ -0,0 +1,469 @@
+package chaincode;
+import com.google.protobuf.ByteString;
+import org.hyperledger.fabric.protos.msp.SerializedIdentity;
+import org.hyperledger.fabric.protos.peer.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Class: InMemoryChaincodeStub
+ *
+ * ChaincodeStub backed by a sorted in-memory world state, so contract functions can be
+ * measured without a peer. Every ledger call optionally waits roundTripNanos to stand in
+ * for the chaincode-to-peer gRPC round trip.
+ */
+public class InMemoryChaincodeStub implements ChaincodeStub {
+    private static final String MAX_UNICODE_RUNE = "\udbff\udfff";
+    /** Self-signed client certificate, Context parses the creator into a ClientIdentity */
+    private static final String CREATOR_CERT =
+            "-----BEGIN CERTIFICATE-----\n" +
+            "MIIBvzCCAWWgAwIBAgIUXHT+n2UJJsY5ByCC5y8wI4hTNWowCgYIKoZIzj0EAwIw\n" +
+            "NDESMBAGA1UEAwwJYmVuY2htYXJrMQ8wDQYDVQQLDAZjbGllbnQxDTALBgNVBAoM\n" +
+            "BE9yZzEwIBcNMjYxMDE4MDI0OTQwWhgPMjEyNjA5MjQwMjQ5NDBaMDQxEjAQBgNV\n" +
+            "BAMMCWJlbmNobWFyazEPMA0GA1UECwwGY2xpZW50MQ0wCwYDVQQKDARPcmcxMFkw\n" +
+            "EwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEsw2RYfyVPZa9iDx6ZqNRo2dNOjZl/uVH\n" +
+            "qLKrlZqVNzqCRy17hNPBgcsN/V1LggI7UZBNqqltwosV7mFPh2UtBKNTMFEwHQYD\n" +
+            "VR0OBBYEFCTKFCU9ktBzsScpj7r8bAjbpFoRMB8GA1UdIwQYMBaAFCTKFCU9ktBz\n" +
+            "sScpj7r8bAjbpFoRMA8GA1UdEwEB/wQFMAMBAf8wCgYIKoZIzj0EAwIDSAAwRQIg\n" +
+            "bvNbOZ2m3esmG/pV/2Fz8CLX+LBrpombjucskdl4F1QCIQCZEWjYJQmtwZRJqIgL\n" +
+            "LcdatZtRN6qVl7hvR8j0Sozo0w==\n" +
+            "-----END CERTIFICATE-----\n";
+    /** Self-signed certificate carrying the Fabric CA attribute stateAdmin=true */
+    public static final String STATE_ADMIN_CERT =
+            "-----BEGIN CERTIFICATE-----\n" +
+            "MIIB7TCCAZOgAwIBAgIUECHg2y4TRwwAwKdkPdDycivTEt0wCgYIKoZIzj0EAwIw\n" +
+            "NDENMAsGA1UECgwET3JnMTEOMAwGA1UECwwFYWRtaW4xEzARBgNVBAMMCnN0YXRl\n" +
+            "YWRtaW4wIBcNMjYxMDE4MDM0MzQ4WhgPMjEyNjA5MjQwMzQzNDhaMDQxDTALBgNV\n" +
+            "BAoMBE9yZzExDjAMBgNVBAsMBWFkbWluMRMwEQYDVQQDDApzdGF0ZWFkbWluMFkw\n" +
+            "EwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEsEL5p4jT9OESi5XqHzhCXqC6sWXiCY8P\n" +
+            "0CD/j3lhjVSZPTdJBuMTJfx9hPkS/zR7K0HuXMA7YsN+e4KOEiKA4aOBgDB+MB0G\n" +
+            "A1UdDgQWBBSDjmyGRedEE0azYUlNVt9naauvhzAfBgNVHSMEGDAWgBSDjmyGRedE\n" +
+            "E0azYUlNVt9naauvhzAPBgNVHRMBAf8EBTADAQH/MCsGCCoDBAUGBwgBBB97ImF0\n" +
+            "dHJzIjp7InN0YXRlQWRtaW4iOiJ0cnVlIn19MAoGCCqGSM49BAMCA0gAMEUCIEi2\n" +
+            "zvp1eQPKmQPL6MlC+TOJeAjEUYMytel4UuFSEzaNAiEAvKAUHV41jTzSBXPdSmCF\n" +
+            "W43qtkW/KoJt1U8S/JFM+xw=\n" +
+            "-----END CERTIFICATE-----\n";
+
+    private final NavigableMap<String, byte[]> state = new TreeMap<>();
+    private final long roundTripNanos;
+    private String txId = "tx0";
+    private Instant txTimestamp = Instant.EPOCH;
+    private ChaincodeEvent event;
+    private String mspId = "Org1MSP";
+    private String certificate = CREATOR_CERT;
+    private long calls;
+
+    public InMemoryChaincodeStub() {
+        this(0);
+    }
+
+    public InMemoryChaincodeStub(final long roundTripNanos) {
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    /**
+     * Starts a new transaction, which also clears the event of the previous one
+     */
+    public void setTxId(final String txId) {
+        this.txId = txId;
+        this.event = null;
+    }
+
+    public void setTxTimestamp(final Instant txTimestamp) {
+        this.txTimestamp = txTimestamp;
+    }
+
+    /**
+     * Identity of the client that submits the following transactions
+     * @param certificate PEM encoded X.509 certificate
+     */
+    public void setCreator(final String mspId, final String certificate) {
+        this.mspId = mspId;
+        this.certificate = certificate;
+    }
+
+    /**
+     * Number of ledger calls made so far, each of which is a round trip on a real peer
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    public NavigableMap<String, byte[]> getWorldState() {
+        return state;
+    }
+
+    private void roundTrip() {
+        calls++;
+        if (roundTripNanos > 0) {
+            long until = System.nanoTime() + roundTripNanos;
+            while (System.nanoTime() < until) {
+                // busy wait, sleeping is far too coarse for sub-millisecond round trips
+            }
+        }
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        roundTrip();
+        byte[] value = state.get(key);
+        return value == null ? new byte[0] : value;
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        roundTrip();
+        if (value == null || value.length == 0) {
+            state.remove(key);
+        } else {
+            state.put(key, value);
+        }
+    }
+
+    @Override
+    public void delState(final String key) {
+        roundTrip();
+        state.remove(key);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        roundTrip();
+        return new Results(range(startKey, endKey, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(final String startKey, final String endKey,
+                                                                                   final int pageSize, final String bookmark) {
+        roundTrip();
+        String from = bookmark == null || bookmark.isEmpty() ? startKey : bookmark;
+        return page(range(from, endKey, pageSize + 1), pageSize);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+        roundTrip();
+        return new Results(range(compositeKey, compositeKey + MAX_UNICODE_RUNE, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String objectType, final String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        return getStateByPartialCompositeKey(compositeKey.toString());
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(final CompositeKey compositeKey,
+                                                                                                 final int pageSize, final String bookmark) {
+        String prefix = compositeKey.toString();
+        return getStateByRangeWithPagination(prefix, prefix + MAX_UNICODE_RUNE, pageSize, bookmark);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(final String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    private List<KeyValue> range(final String startKey, final String endKey, final int limit) {
+        NavigableMap<String, byte[]> view = endKey == null || endKey.isEmpty()
+                ? state.tailMap(startKey, true) : state.subMap(startKey, true, endKey, false);
+        List<KeyValue> kvs = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : view.entrySet()) {
+            if (kvs.size() == limit) {
+                break;
+            }
+            kvs.add(new Entry(entry.getKey(), entry.getValue()));
+        }
+        return kvs;
+    }
+
+    private static Results page(final List<KeyValue> kvs, final int pageSize) {
+        String bookmark = "";
+        if (kvs.size() > pageSize) {
+            bookmark = kvs.remove(pageSize).getKey();
+        }
+        QueryResponseMetadata metadata = QueryResponseMetadata.newBuilder()
+                .setFetchedRecordsCount(kvs.size())
+                .setBookmark(bookmark)
+                .build();
+        return new Results(kvs, metadata);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+        roundTrip();
+        return new Results(query(query, 0, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Rich query through MangoQuery, the bookmark is the offset of the next page
+     */
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(final String query, final int pageSize,
+                                                                                  final String bookmark) {
+        roundTrip();
+        int offset = bookmark == null || bookmark.isEmpty() ? 0 : Integer.parseInt(bookmark);
+        List<KeyValue> kvs = query(query, offset, pageSize + 1);
+        String next = "";
+        if (kvs.size() > pageSize) {
+            kvs.remove(pageSize);
+            next = String.valueOf(offset + pageSize);
+        }
+        return new Results(kvs, QueryResponseMetadata.newBuilder()
+                .setFetchedRecordsCount(kvs.size())
+                .setBookmark(next)
+                .build());
+    }
+
+    private List<KeyValue> query(final String query, final int offset, final int limit) {
+        MangoQuery mango = new MangoQuery(query);
+        List<KeyValue> kvs = new ArrayList<>();
+        int matched = 0;
+        for (Map.Entry<String, byte[]> entry : state.entrySet()) {
+            if (kvs.size() == limit) {
+                break;
+            }
+            if (mango.matches(entry.getValue()) && matched++ >= offset) {
+                kvs.add(new Entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        return kvs;
+    }
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return txTimestamp;
+    }
+
+    @Override
+    public String getChannelId() {
+        return "mychannel";
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getFunction() {
+        return null;
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void setEvent(final String name, final byte[] payload) {
+        event = ChaincodeEvent.newBuilder()
+                .setTxId(txId)
+                .setEventName(name)
+                .setPayload(ByteString.copyFrom(payload))
+                .build();
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return event;
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        return null;
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return SerializedIdentity.newBuilder()
+                .setMspid(getMspId())
+                .setIdBytes(ByteString.copyFromUtf8(certificate))
+                .build()
+                .toByteArray();
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return new byte[0];
+    }
+
+    @Override
+    public String getMspId() {
+        return mspId;
+    }
+
+    @Override
+    public Chaincode.Response invokeChaincode(final String chaincodeName, final List<byte[]> args, final String channel) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(final String key) {
+        return null;
+    }
+
+    @Override
+    public void setStateValidationParameter(final String key, final byte[] value) {
+    }
+
+    @Override
+    public byte[] getPrivateData(final String collection, final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(final String collection, final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(final String collection, final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putPrivateData(final String collection, final String key, final byte[] value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(final String collection, final String key, final byte[] value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delPrivateData(final String collection, final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void purgePrivateData(final String collection, final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(final String collection, final String startKey, final String endKey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection, final String compositeKey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection, final CompositeKey compositeKey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection, final String objectType,
+                                                                              final String... attributes) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(final String collection, final String query) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static final class Entry implements KeyValue {
+        private final String key;
+        private final byte[] value;
+
+        Entry(final String key, final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Results implements QueryResultsIterator<KeyValue>, QueryResultsIteratorWithMetadata<KeyValue> {
+        private final List<KeyValue> kvs;
+        private final QueryResponseMetadata metadata;
+
+        Results(final List<KeyValue> kvs) {
+            this(kvs, QueryResponseMetadata.getDefaultInstance());
+        }
+
+        Results(final List<KeyValue> kvs, final QueryResponseMetadata metadata) {
+            this.kvs = kvs;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return kvs.iterator();
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
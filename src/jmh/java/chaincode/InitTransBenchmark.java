@@ -0,0 +1,42 @@
+package chaincode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class: InitTransBenchmark
+ *
+ * Settlement latency of InitTrans against group size. roundTripMicros stands in for the
+ * chaincode-to-peer round trip of every ledger call. The same filled group is settled
+ * again on every invocation, after its trade record is dropped from the world state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InitTransBenchmark {
+    @Param({"2", "10", "50", "200"})
+    public int groupSize;
+
+    @Param({"0", "100"})
+    public long roundTripMicros;
+
+    private ContractDriver driver;
+    private Contract contract;
+
+    @Setup
+    public void setUp() {
+        driver = new ContractDriver(new InMemoryChaincodeStub(TimeUnit.MICROSECONDS.toNanos(roundTripMicros)));
+        contract = driver.getContract();
+        driver.openRuleWithOrders("rule", groupSize, 1);
+    }
+
+    @Benchmark
+    public String initTrans() {
+        //拼单只能成团一次，直接从世界状态删除上一次的交易单，不经过链码
+        driver.getStub().getWorldState().remove("group0-rule");
+        return driver.invoke(ctx -> contract.initTrans(ctx, "rule", "group0"));
+    }
+}
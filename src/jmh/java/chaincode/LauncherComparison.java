@@ -0,0 +1,175 @@
+package chaincode;
+import org.hyperledger.fabric.contract.ContractRouter;
+import org.hyperledger.fabric.protos.peer.Response;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class: LauncherComparison
+ *
+ * Compares ContractRouter with ChaincodeService as external chaincode services. Every run
+ * is a fresh JVM that starts the launcher's ChaincodeServer on a local port and drives it
+ * through a StandInPeer. Startup is the time from JVM start to the first completed
+ * transaction; throughput is txs transactions, alternating ChangeCredit and QueryCredit
+ * over users accounts, with at most inflight of them outstanding. Both launchers get the
+ * same worker pool, router through config.props and service through CHAINCODE_WORKER_THREADS.
+ *
+ * Usage: LauncherComparison [runs=5] [txs=20000] [inflight=64] [users=100] [workers=5] [port=9999]
+ */
+public class LauncherComparison {
+    private static final String[] LAUNCHERS = {"router", "service"};
+
+    public static void main(final String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "");
+        }
+        if (options.containsKey("launcher")) {
+            run(options);
+            return;
+        }
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        String workers = options.getOrDefault("workers", "5");
+        Path config = Files.createTempDirectory("launcher");
+        try (Writer writer = Files.newBufferedWriter(config.resolve("config.props"))) {
+            writer.write("TP_CORE_POOL_SIZE=" + workers + "\nTP_MAX_POOL_SIZE=" + workers + "\n");
+        }
+
+        System.out.println(String.format("%-10s %4s %12s %12s", "launcher", "run", "startup(ms)", "tx/s"));
+        for (String launcher : LAUNCHERS) {
+            double[] startup = new double[runs];
+            double[] throughput = new double[runs];
+            for (int run = 0; run < runs; run++) {
+                List<String> command = new ArrayList<>(Arrays.asList(
+                        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                        "-cp", config + File.pathSeparator + System.getProperty("java.class.path"),
+                        LauncherComparison.class.getName(), "launcher=" + launcher));
+                command.addAll(Arrays.asList(args));
+                ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+                builder.environment().put("CORE_CHAINCODE_ID_NAME", "chaincode:" + launcher);
+                builder.environment().put("CHAINCODE_SERVER_ADDRESS", "localhost:" + options.getOrDefault("port", "9999"));
+                if ("service".equals(launcher)) {
+                    builder.environment().put(ChaincodeService.WORKER_THREADS, workers);
+                }
+                Process process = builder.start();
+                String result = null;
+                StringBuilder output = new StringBuilder();
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        if (line.startsWith("result ")) {
+                            result = line;
+                        }
+                        output.append(line).append('\n');
+                    }
+                }
+                if (process.waitFor() != 0 || result == null) {
+                    System.out.println(output);
+                    throw new IllegalStateException(launcher + " run " + run + " failed with exit code " + process.exitValue());
+                }
+                String[] figures = result.split(" ");
+                startup[run] = Double.parseDouble(figures[1]);
+                throughput[run] = Double.parseDouble(figures[2]);
+                System.out.println(String.format("%-10s %4d %12.0f %12.0f", launcher, run, startup[run], throughput[run]));
+            }
+            System.out.println(String.format("%-10s %4s %12.0f %12.0f", launcher, "mean",
+                    Arrays.stream(startup).average().orElse(0), Arrays.stream(throughput).average().orElse(0)));
+        }
+    }
+
+    /**
+     * One run in this JVM, prints "result startupMillis txPerSecond"
+     */
+    private static void run(final Map<String, String> options) throws Exception {
+        String launcher = options.get("launcher");
+        int port = Integer.parseInt(options.getOrDefault("port", "9999"));
+        int txs = Integer.parseInt(options.getOrDefault("txs", "20000"));
+        int users = Integer.parseInt(options.getOrDefault("users", "100"));
+        Semaphore inflight = new Semaphore(Integer.parseInt(options.getOrDefault("inflight", "64")));
+
+        Thread server = new Thread(() -> {
+            try {
+                if ("router".equals(launcher)) {
+                    ContractRouter.main(new String[0]);
+                } else {
+                    ChaincodeService.main(new String[0]);
+                }
+            } catch (Throwable e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }, "launcher");
+        server.setDaemon(true);
+        server.start();
+
+        StandInPeer peer = connect(port);
+        check(peer.invoke("InitCredit", "user0").get());
+        long startupMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        for (int i = 1; i < users; i++) {
+            check(peer.invoke("InitCredit", "user" + i).get());
+        }
+
+        AtomicLong failed = new AtomicLong();
+        long start = System.nanoTime();
+        List<CompletableFuture<Response>> responses = new ArrayList<>(txs);
+        for (int i = 0; i < txs; i++) {
+            String userID = "user" + (i / 2 % users);
+            inflight.acquire();
+            CompletableFuture<Response> response = i % 2 == 0
+                    ? peer.invoke("ChangeCredit", userID, "1")
+                    : peer.invoke("QueryCredit", userID);
+            response.whenComplete((r, t) -> {
+                if (t != null || r.getStatus() >= 400) {
+                    failed.incrementAndGet();
+                }
+                inflight.release();
+            });
+            responses.add(response);
+        }
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).exceptionally(t -> null).get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (failed.get() > 0) {
+            throw new IllegalStateException(failed.get() + " transactions failed");
+        }
+        System.out.println(String.format("result %d %.0f", startupMillis, txs / seconds));
+        System.exit(0);
+    }
+
+    private static StandInPeer connect(final int port) throws Exception {
+        //服务端启动前连接会失败，重试直到注册完成
+        while (true) {
+            StandInPeer peer = new StandInPeer("localhost", port);
+            try {
+                peer.awaitReady(5, TimeUnit.SECONDS);
+                return peer;
+            } catch (Exception e) {
+                peer.close();
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+        }
+    }
+
+    private static void check(final Response response) throws IOException {
+        if (response.getStatus() >= 400) {
+            throw new IOException(response.getMessage());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package chaincode;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Class: MangoQuery
+ *
+ * Local stand-in for CouchDB rich queries. Supports selectors made of field equality and
+ * the $eq, $ne, $gt, $gte, $lt, $lte and $in operators, combined with an implicit AND.
+ * Indexes named in use_index are ignored. Binary values never match, as in CouchDB.
+ */
+final class MangoQuery {
+    private final JSONObject selector;
+
+    MangoQuery(final String query) {
+        JSONObject parsed = JSONObject.parseObject(query);
+        selector = parsed.getJSONObject("selector");
+        if (selector == null) {
+            throw new IllegalArgumentException("query has no selector: " + query);
+        }
+    }
+
+    boolean matches(final byte[] value) {
+        if (value.length == 0 || value[0] != '{') {
+            return false;
+        }
+        JSONObject document = JSONObject.parseObject(new String(value, StandardCharsets.UTF_8));
+        for (Map.Entry<String, Object> condition : selector.entrySet()) {
+            Object field = document.get(condition.getKey());
+            if (condition.getValue() instanceof JSONObject) {
+                for (Map.Entry<String, Object> operator : ((JSONObject) condition.getValue()).entrySet()) {
+                    if (!test(operator.getKey(), field, operator.getValue())) {
+                        return false;
+                    }
+                }
+            } else if (!test("$eq", field, condition.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean test(final String operator, final Object field, final Object operand) {
+        switch (operator) {
+            case "$eq":
+                return field != null && compare(field, operand) == 0;
+            case "$ne":
+                return field == null || compare(field, operand) != 0;
+            case "$gt":
+                return field != null && compare(field, operand) > 0;
+            case "$gte":
+                return field != null && compare(field, operand) >= 0;
+            case "$lt":
+                return field != null && compare(field, operand) < 0;
+            case "$lte":
+                return field != null && compare(field, operand) <= 0;
+            case "$in":
+                for (Object candidate : (JSONArray) operand) {
+                    if (field != null && compare(field, candidate) == 0) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                throw new IllegalArgumentException("unsupported operator " + operator);
+        }
+    }
+
+    private static int compare(final Object field, final Object operand) {
+        if (field instanceof Number && operand instanceof Number) {
+            return new BigDecimal(field.toString()).compareTo(new BigDecimal(operand.toString()));
+        }
+        return field.toString().compareTo(operand.toString());
+    }
+}
@@ -0,0 +1,193 @@
+package chaincode;
+import org.hyperledger.fabric.contract.Context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Class: MvccSimulator
+ *
+ * Predicts MVCC invalidation for the current key layout. Invocations are endorsed
+ * concurrently against a VersionedWorldState, cut into blocks of blockSize, and every
+ * block is validated in order with the peer's read set and phantom read checks before
+ * its valid write sets are committed. Prints committed and invalidated transactions per
+ * function and the keys that caused the invalidations.
+ *
+ * The settle scenario fills one group of each of txs rules of a single seller and then
+ * settles them all with InitTrans.
+ *
+ * Usage: MvccSimulator [scenario=flash-sale|credit|mixed|settle] [blockSize=100] [txs=1000] [users=5] [seed=1]
+ */
+public class MvccSimulator {
+    private final Contract contract = new Contract();
+    private final InMemoryChaincodeStub identity = new InMemoryChaincodeStub();
+    private final VersionedWorldState state = new VersionedWorldState();
+    private final int blockSize;
+    private final Map<String, int[]> functions = new TreeMap<>();
+    private final Map<String, Integer> hotKeys = new HashMap<>();
+    private long txNum;
+
+    public MvccSimulator(final int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * One client invocation of a contract function
+     */
+    public static final class Invocation {
+        private final String function;
+        private final Function<Context, ?> body;
+
+        public Invocation(final String function, final Function<Context, ?> body) {
+            this.function = function;
+            this.body = body;
+        }
+    }
+
+    public Contract getContract() {
+        return contract;
+    }
+
+    /**
+     * Endorses and commits one transaction on its own, for seeding state
+     */
+    public void setUp(final Function<Context, ?> body) {
+        EndorsingStub endorsement = endorse(body);
+        if (endorsement != null) {
+            state.commit(endorsement.getWrites());
+        }
+    }
+
+    /**
+     * Endorses the invocations block by block and validates each block
+     */
+    public void run(final List<Invocation> invocations) {
+        for (int from = 0; from < invocations.size(); from += blockSize) {
+            List<Invocation> block = invocations.subList(from, Math.min(from + blockSize, invocations.size()));
+            //同一区块内的交易并发背书，只能看到上一区块提交后的状态
+            List<EndorsingStub> endorsements = new ArrayList<>();
+            for (Invocation invocation : block) {
+                endorsements.add(endorse(invocation.body));
+            }
+            for (int i = 0; i < block.size(); i++) {
+                int[] counts = functions.computeIfAbsent(block.get(i).function, f -> new int[3]);
+                EndorsingStub endorsement = endorsements.get(i);
+                if (endorsement == null) {
+                    counts[2]++;
+                    continue;
+                }
+                String conflict = state.conflict(endorsement);
+                if (conflict == null) {
+                    state.commit(endorsement.getWrites());
+                    counts[0]++;
+                } else {
+                    counts[1]++;
+                    hotKeys.merge(readable(conflict), 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    private EndorsingStub endorse(final Function<Context, ?> body) {
+        ++txNum;
+        //每笔交易的客户端时间戳比上一笔晚一毫秒
+        EndorsingStub stub = new EndorsingStub(identity, state, "tx" + txNum, ContractDriver.START.plusMillis(txNum));
+        Context ctx = contract.createContext(stub);
+        try {
+            contract.beforeTransaction(ctx);
+            Object result = body.apply(ctx);
+            contract.afterTransaction(ctx, result);
+            return stub;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String readable(final String key) {
+        return key.replace('\u0000', '~').replace("\udbff\udfff", "");
+    }
+
+    public void report() {
+        System.out.println(String.format("%-20s %10s %12s %12s", "function", "committed", "invalidated", "rejected"));
+        for (Map.Entry<String, int[]> entry : functions.entrySet()) {
+            int[] counts = entry.getValue();
+            System.out.println(String.format("%-20s %10d %12d %12d", entry.getKey(), counts[0], counts[1], counts[2]));
+        }
+        System.out.println();
+        System.out.println("hot keys (invalidations):");
+        hotKeys.entrySet().stream()
+                .sorted((a, b) -> b.getValue() - a.getValue())
+                .limit(10)
+                .forEach(entry -> System.out.println(String.format("%8d  %s", entry.getValue(), entry.getKey())));
+    }
+
+    private static List<Invocation> settle(final MvccSimulator simulator, final int rules) {
+        Contract contract = simulator.getContract();
+        List<Invocation> invocations = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            String discountRuleID = "rule" + i;
+            String groupBuyingID = "group" + i;
+            simulator.setUp(ctx -> contract.initRule(ctx, "seller", discountRuleID, "good", "2", "100", "80"));
+            simulator.setUp(ctx -> contract.open(ctx, discountRuleID, "1000"));
+            simulator.setUp(ctx -> contract.initCredit(ctx, "first" + discountRuleID));
+            simulator.setUp(ctx -> contract.initCredit(ctx, "other" + discountRuleID));
+            simulator.setUp(ctx -> contract.initGroup(ctx, "first" + discountRuleID, groupBuyingID, discountRuleID));
+            simulator.setUp(ctx -> contract.participate(ctx, "other" + discountRuleID, groupBuyingID));
+            invocations.add(new Invocation("InitTrans", ctx -> contract.initTrans(ctx, discountRuleID, groupBuyingID)));
+        }
+        return invocations;
+    }
+
+    public static void main(final String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "");
+        }
+        String scenario = options.getOrDefault("scenario", "flash-sale");
+        int blockSize = Integer.parseInt(options.getOrDefault("blockSize", "100"));
+        int txs = Integer.parseInt(options.getOrDefault("txs", "1000"));
+        int users = Integer.parseInt(options.getOrDefault("users", "5"));
+        Random random = new Random(Long.parseLong(options.getOrDefault("seed", "1")));
+
+        MvccSimulator simulator = new MvccSimulator(blockSize);
+        Contract contract = simulator.getContract();
+        if ("settle".equals(scenario)) {
+            simulator.run(settle(simulator, txs));
+            System.out.println("scenario=" + scenario + " blockSize=" + blockSize + " txs=" + txs);
+            simulator.report();
+            return;
+        }
+        int buyers = "flash-sale".equals(scenario) ? txs : users;
+        simulator.setUp(ctx -> contract.initRule(ctx, "seller", "rule", "good", String.valueOf(txs + 1), "100", "80"));
+        simulator.setUp(ctx -> contract.open(ctx, "rule", "1000"));
+        for (int i = 0; i < buyers; i++) {
+            String userID = "buyer" + i;
+            simulator.setUp(ctx -> contract.initCredit(ctx, userID));
+        }
+        simulator.setUp(ctx -> contract.initGroup(ctx, "buyer0", "group0", "rule"));
+
+        List<Invocation> invocations = new ArrayList<>();
+        for (int i = 0; i < txs; i++) {
+            String userID = "buyer" + ("flash-sale".equals(scenario) ? i : random.nextInt(users));
+            int pick = random.nextInt(10);
+            if ("flash-sale".equals(scenario) || pick < 5) {
+                invocations.add(new Invocation("Participate", ctx -> contract.participate(ctx, userID, "group0")));
+            } else if ("credit".equals(scenario) || pick < 8) {
+                String change = String.valueOf(random.nextInt(11) - 5);
+                invocations.add(new Invocation("ChangeCredit", ctx -> contract.changeCredit(ctx, userID, change)));
+            } else {
+                String groupBuyingID = "group" + (i + 1);
+                invocations.add(new Invocation("InitGroup", ctx -> contract.initGroup(ctx, userID, groupBuyingID, "rule")));
+            }
+        }
+        simulator.run(invocations);
+        System.out.println("scenario=" + scenario + " blockSize=" + blockSize + " txs=" + txs);
+        simulator.report();
+    }
+}
@@ -0,0 +1,151 @@
+package chaincode;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class: RecordCodecBenchmark
+ *
+ * Encode and decode cost of the binary record format against the JSON HashMap format
+ * it replaces. Run main to print the payload sizes of both formats.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordCodecBenchmark {
+    @Param({"2", "50"})
+    public int groupSize;
+
+    private DiscountRule rule;
+    private RuleStatus status;
+    private TradeTransaction transaction;
+    private Map<String, String> ruleMap;
+    private Map<String, String> transactionMap;
+    private byte[] ruleBinary;
+    private byte[] statusBinary;
+    private byte[] ruleJson;
+    private byte[] transactionBinary;
+    private byte[] transactionJson;
+
+    @Setup
+    public void setUp() {
+        rule = new DiscountRule();
+        rule.setSellerID("seller-0001");
+        rule.setGoodID("good-0001");
+        rule.setGroupNum(groupSize);
+        rule.setFirstBuyerPrice(9900);
+        rule.setOtherBuyerPrice(7900);
+        status = new RuleStatus();
+        status.setRuleState(1);
+        status.setDuration(3600000);
+        status.setStartTime(1600000000000L);
+        status.setEndTime(1600003600000L);
+
+        ruleMap = new HashMap<>();
+        ruleMap.put("sellerID", rule.getSellerID());
+        ruleMap.put("goodID", rule.getGoodID());
+        ruleMap.put("groupNum", String.valueOf(rule.getGroupNum()));
+        ruleMap.put("firstBuyerPrice", String.valueOf(rule.getFirstBuyerPrice()));
+        ruleMap.put("otherBuyerPrice", String.valueOf(rule.getOtherBuyerPrice()));
+        ruleMap.put("ruleState", String.valueOf(status.getRuleState()));
+        ruleMap.put("duration", String.valueOf(status.getDuration()));
+        ruleMap.put("startTime", String.valueOf(status.getStartTime()));
+        ruleMap.put("endTime", String.valueOf(status.getEndTime()));
+
+        transaction = new TradeTransaction();
+        transaction.setPayee(rule.getSellerID());
+        StringBuilder payerIDs = new StringBuilder();
+        StringBuilder payments = new StringBuilder();
+        for (int i = 0; i < groupSize; i++) {
+            int payment = i == 0 ? rule.getFirstBuyerPrice() : rule.getOtherBuyerPrice();
+            transaction.getPayerIDs().add("buyer-" + i);
+            transaction.getPayments().add(payment);
+            transaction.setReceivables(transaction.getReceivables() + payment);
+            payerIDs.append(i == 0 ? "" : "/").append("buyer-").append(i);
+            payments.append(i == 0 ? "" : "/").append(payment);
+        }
+        transactionMap = new HashMap<>();
+        transactionMap.put("transState", "0");
+        transactionMap.put("payerIDs", payerIDs.toString());
+        transactionMap.put("payee", transaction.getPayee());
+        transactionMap.put("payments", payments.toString());
+        transactionMap.put("receivables", String.valueOf(transaction.getReceivables()));
+
+        ruleBinary = rule.toBytes();
+        statusBinary = status.toBytes();
+        ruleJson = JSON.toJSONString(ruleMap).getBytes(StandardCharsets.UTF_8);
+        transactionBinary = transaction.toBytes();
+        transactionJson = JSON.toJSONString(transactionMap).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeRuleJson() {
+        return JSON.toJSONString(ruleMap).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int encodeRuleBinary() {
+        return rule.toBytes().length + status.toBytes().length;
+    }
+
+    @Benchmark
+    public long decodeRuleJson() {
+        JSONObject json = JSONObject.parseObject(new String(ruleJson, StandardCharsets.UTF_8));
+        return Long.valueOf(json.getString("endTime")) + Integer.parseInt(json.getString("groupNum"));
+    }
+
+    @Benchmark
+    public long decodeRuleBinary() {
+        DiscountRule decoded = DiscountRule.fromBytes(ruleBinary);
+        return RuleStatus.fromBytes(statusBinary).getEndTime() + decoded.getGroupNum();
+    }
+
+    @Benchmark
+    public byte[] encodeTransactionJson() {
+        return JSON.toJSONString(transactionMap).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeTransactionBinary() {
+        return transaction.toBytes();
+    }
+
+    @Benchmark
+    public int decodeTransactionJson() {
+        JSONObject json = JSONObject.parseObject(new String(transactionJson, StandardCharsets.UTF_8));
+        return Integer.parseInt(json.getString("receivables")) + json.getString("payerIDs").split("/").length;
+    }
+
+    @Benchmark
+    public int decodeTransactionBinary() {
+        TradeTransaction decoded = TradeTransaction.fromBytes(transactionBinary);
+        return decoded.getReceivables() + decoded.getPayerIDs().size();
+    }
+
+    /**
+     * Prints the payload size of both formats
+     */
+    public static void main(final String[] args) {
+        for (int groupSize : new int[]{2, 50}) {
+            RecordCodecBenchmark benchmark = new RecordCodecBenchmark();
+            benchmark.groupSize = groupSize;
+            benchmark.setUp();
+            System.out.println("groupSize=" + groupSize
+                    + " rule json=" + benchmark.ruleJson.length + "B binary=" + benchmark.ruleBinary.length + "+" + benchmark.statusBinary.length + "B"
+                    + " transaction json=" + benchmark.transactionJson.length + "B binary=" + benchmark.transactionBinary.length + "B");
+            //旧版JSON记录仍可读取
+            DiscountRule legacy = DiscountRule.fromBytes(benchmark.ruleJson);
+            if (legacy.getGroupNum() != groupSize || RuleStatus.fromRule(benchmark.ruleJson).getEndTime() != benchmark.status.getEndTime()) {
+                throw new IllegalStateException("legacy rule decoded wrong");
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package chaincode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class: RuleBenchmark
+ *
+ * Seller functions: InitRule, Open/Close and QueryState.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleBenchmark {
+    private ContractDriver driver;
+    private Contract contract;
+    private long ruleNum;
+
+    @Setup
+    public void setUp() {
+        driver = new ContractDriver();
+        contract = driver.getContract();
+        driver.openRuleWithOrders("rule", 2, 0);
+        driver.invoke(ctx -> contract.initRule(ctx, "seller", "cycled", "good", "2", "100", "80"));
+    }
+
+    @Benchmark
+    public String initRule() {
+        String discountRuleID = "rule" + (++ruleNum);
+        return driver.invoke(ctx -> contract.initRule(ctx, "seller", discountRuleID, "good", "10", "100", "80"));
+    }
+
+    @Benchmark
+    public String openClose() {
+        driver.invoke(ctx -> contract.open(ctx, "cycled", "1000"));
+        return driver.invoke(ctx -> contract.close(ctx, "cycled"));
+    }
+
+    @Benchmark
+    public String queryState() {
+        return driver.invoke(ctx -> contract.queryState(ctx, "rule"));
+    }
+}
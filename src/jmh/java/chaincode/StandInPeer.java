@@ -0,0 +1,245 @@
+package chaincode;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Timestamp;
+import io.grpc.ManagedChannel;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.StreamObserver;
+import org.hyperledger.fabric.protos.common.ChannelHeader;
+import org.hyperledger.fabric.protos.common.Header;
+import org.hyperledger.fabric.protos.common.HeaderType;
+import org.hyperledger.fabric.protos.common.SignatureHeader;
+import org.hyperledger.fabric.protos.ledger.queryresult.KV;
+import org.hyperledger.fabric.protos.peer.ChaincodeGrpc;
+import org.hyperledger.fabric.protos.peer.ChaincodeInput;
+import org.hyperledger.fabric.protos.peer.ChaincodeMessage;
+import org.hyperledger.fabric.protos.peer.ChaincodeProposalPayload;
+import org.hyperledger.fabric.protos.peer.DelState;
+import org.hyperledger.fabric.protos.peer.GetState;
+import org.hyperledger.fabric.protos.peer.GetStateByRange;
+import org.hyperledger.fabric.protos.peer.Proposal;
+import org.hyperledger.fabric.protos.peer.PutState;
+import org.hyperledger.fabric.protos.peer.QueryMetadata;
+import org.hyperledger.fabric.protos.peer.QueryResponse;
+import org.hyperledger.fabric.protos.peer.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.QueryResultBytes;
+import org.hyperledger.fabric.protos.peer.Response;
+import org.hyperledger.fabric.protos.peer.SignedProposal;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class: StandInPeer
+ *
+ * Plays the peer's side of the chaincode protocol against an external chaincode service:
+ * connects over gRPC, answers REGISTER with REGISTERED and READY, sends TRANSACTION messages
+ * and serves GetState, PutState, DelState and range queries from an in-memory world state.
+ * Writes are applied as they arrive, there is no read-write set validation. Rich queries
+ * are answered with an error.
+ */
+public class StandInPeer implements AutoCloseable {
+    private static final String CHANNEL = "mychannel";
+
+    private final ManagedChannel channel;
+    private final StreamObserver<ChaincodeMessage> toChaincode;
+    private final NavigableMap<String, ByteString> state = new ConcurrentSkipListMap<>();
+    private final Map<String, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final ByteString creator = ByteString.copyFrom(new InMemoryChaincodeStub().getCreator());
+    private final AtomicLong txNum = new AtomicLong();
+
+    public StandInPeer(final String host, final int port) {
+        channel = NettyChannelBuilder.forAddress(host, port).usePlaintext().build();
+        toChaincode = ChaincodeGrpc.newStub(channel).connect(new StreamObserver<ChaincodeMessage>() {
+            @Override
+            public void onNext(final ChaincodeMessage message) {
+                handle(message);
+            }
+
+            @Override
+            public void onError(final Throwable t) {
+                fail(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                fail(new IllegalStateException("chaincode closed the stream"));
+            }
+        });
+    }
+
+    /**
+     * Waits until the chaincode has registered and is ready for transactions
+     */
+    public void awaitReady(final long timeout, final TimeUnit unit) throws Exception {
+        ready.get(timeout, unit);
+    }
+
+    /**
+     * Sends one transaction proposal
+     * @param args function name followed by its arguments
+     * @return the chaincode's response, completed exceptionally if it answered with ERROR
+     */
+    public CompletableFuture<Response> invoke(final String... args) {
+        String txId = "tx" + txNum.incrementAndGet();
+        ChaincodeInput.Builder input = ChaincodeInput.newBuilder();
+        for (String arg : args) {
+            input.addArgs(ByteString.copyFromUtf8(arg));
+        }
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        pending.put(txId, response);
+        send(ChaincodeMessage.newBuilder()
+                .setType(ChaincodeMessage.Type.TRANSACTION)
+                .setTxid(txId)
+                .setChannelId(CHANNEL)
+                .setPayload(input.build().toByteString())
+                .setProposal(proposal(txId, input.build()))
+                .build());
+        return response;
+    }
+
+    private SignedProposal proposal(final String txId, final ChaincodeInput input) {
+        Instant now = Instant.now();
+        ChannelHeader channelHeader = ChannelHeader.newBuilder()
+                .setType(HeaderType.ENDORSER_TRANSACTION_VALUE)
+                .setChannelId(CHANNEL)
+                .setTxId(txId)
+                .setTimestamp(Timestamp.newBuilder().setSeconds(now.getEpochSecond()).setNanos(now.getNano()))
+                .build();
+        SignatureHeader signatureHeader = SignatureHeader.newBuilder()
+                .setCreator(creator)
+                .setNonce(ByteString.copyFromUtf8(txId))
+                .build();
+        Proposal proposal = Proposal.newBuilder()
+                .setHeader(Header.newBuilder()
+                        .setChannelHeader(channelHeader.toByteString())
+                        .setSignatureHeader(signatureHeader.toByteString())
+                        .build()
+                        .toByteString())
+                .setPayload(ChaincodeProposalPayload.newBuilder().setInput(input.toByteString()).build().toByteString())
+                .build();
+        return SignedProposal.newBuilder().setProposalBytes(proposal.toByteString()).build();
+    }
+
+    private void handle(final ChaincodeMessage message) {
+        try {
+            switch (message.getType()) {
+                case REGISTER:
+                    send(ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.REGISTERED).build());
+                    send(ChaincodeMessage.newBuilder().setType(ChaincodeMessage.Type.READY).build());
+                    ready.complete(null);
+                    break;
+                case GET_STATE:
+                    ByteString value = state.get(GetState.parseFrom(message.getPayload()).getKey());
+                    respond(message, value == null ? ByteString.EMPTY : value);
+                    break;
+                case PUT_STATE:
+                    PutState put = PutState.parseFrom(message.getPayload());
+                    state.put(put.getKey(), put.getValue());
+                    respond(message, ByteString.EMPTY);
+                    break;
+                case DEL_STATE:
+                    state.remove(DelState.parseFrom(message.getPayload()).getKey());
+                    respond(message, ByteString.EMPTY);
+                    break;
+                case GET_STATE_BY_RANGE:
+                    respond(message, range(message.getTxid(), GetStateByRange.parseFrom(message.getPayload())));
+                    break;
+                case QUERY_STATE_CLOSE:
+                    respond(message, QueryResponse.newBuilder().setId(message.getTxid()).build().toByteString());
+                    break;
+                case COMPLETED:
+                    complete(message.getTxid()).complete(Response.parseFrom(message.getPayload()));
+                    break;
+                case ERROR:
+                    complete(message.getTxid()).completeExceptionally(
+                            new IllegalStateException(message.getPayload().toString(StandardCharsets.UTF_8)));
+                    break;
+                default:
+                    error(message, "unsupported by the stand-in peer: " + message.getType());
+            }
+        } catch (InvalidProtocolBufferException e) {
+            error(message, e.getMessage());
+        }
+    }
+
+    private ByteString range(final String txId, final GetStateByRange request) throws InvalidProtocolBufferException {
+        QueryMetadata metadata = QueryMetadata.parseFrom(request.getMetadata());
+        String from = metadata.getBookmark().isEmpty() ? request.getStartKey() : metadata.getBookmark();
+        NavigableMap<String, ByteString> view = request.getEndKey().isEmpty()
+                ? state.tailMap(from, true) : state.subMap(from, true, request.getEndKey(), false);
+        int limit = metadata.getPageSize() > 0 ? metadata.getPageSize() : Integer.MAX_VALUE;
+        QueryResponse.Builder response = QueryResponse.newBuilder().setId(txId).setHasMore(false);
+        String bookmark = "";
+        for (Map.Entry<String, ByteString> entry : view.entrySet()) {
+            if (response.getResultsCount() == limit) {
+                bookmark = entry.getKey();
+                break;
+            }
+            response.addResults(QueryResultBytes.newBuilder().setResultBytes(KV.newBuilder()
+                    .setKey(entry.getKey())
+                    .setValue(entry.getValue())
+                    .build()
+                    .toByteString()));
+        }
+        return response.setMetadata(QueryResponseMetadata.newBuilder()
+                        .setFetchedRecordsCount(response.getResultsCount())
+                        .setBookmark(bookmark)
+                        .build()
+                        .toByteString())
+                .build()
+                .toByteString();
+    }
+
+    private CompletableFuture<Response> complete(final String txId) {
+        CompletableFuture<Response> response = pending.remove(txId);
+        return response == null ? new CompletableFuture<>() : response;
+    }
+
+    private void respond(final ChaincodeMessage request, final ByteString payload) {
+        send(ChaincodeMessage.newBuilder()
+                .setType(ChaincodeMessage.Type.RESPONSE)
+                .setTxid(request.getTxid())
+                .setChannelId(request.getChannelId())
+                .setPayload(payload)
+                .build());
+    }
+
+    private void error(final ChaincodeMessage request, final String error) {
+        send(ChaincodeMessage.newBuilder()
+                .setType(ChaincodeMessage.Type.ERROR)
+                .setTxid(request.getTxid())
+                .setChannelId(request.getChannelId())
+                .setPayload(ByteString.copyFromUtf8(error))
+                .build());
+    }
+
+    private void send(final ChaincodeMessage message) {
+        //StreamObserver 不是线程安全的
+        synchronized (toChaincode) {
+            toChaincode.onNext(message);
+        }
+    }
+
+    private void fail(final Throwable t) {
+        ready.completeExceptionally(t);
+        pending.values().forEach(response -> response.completeExceptionally(t));
+        pending.clear();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (toChaincode) {
+            toChaincode.onCompleted();
+        }
+        channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,54 @@
+package chaincode;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class: SweepBenchmark
+ *
+ * SweepExpired against the number of rules that are open and not expired. Every
+ * invocation opens expiredRules rules that end at once, moves the clock past them and
+ * sweeps them in one page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SweepBenchmark {
+    @Param({"100", "10000"})
+    public int openRules;
+
+    @Param({"10"})
+    public int expiredRules;
+
+    private ContractDriver driver;
+    private Contract contract;
+
+    @Setup
+    public void setUp() {
+        driver = new ContractDriver();
+        contract = driver.getContract();
+        for (int i = 0; i < openRules; i++) {
+            String discountRuleID = "open" + i;
+            driver.invoke(ctx -> contract.initRule(ctx, "seller", discountRuleID, "good", "2", "100", "80"));
+            driver.invoke(ctx -> contract.open(ctx, discountRuleID, "100000000"));
+        }
+        for (int i = 0; i < expiredRules; i++) {
+            String discountRuleID = "expiring" + i;
+            driver.invoke(ctx -> contract.initRule(ctx, "seller", discountRuleID, "good", "2", "100", "80"));
+        }
+    }
+
+    @Benchmark
+    public String sweepExpired() {
+        for (int i = 0; i < expiredRules; i++) {
+            String discountRuleID = "expiring" + i;
+            driver.invoke(ctx -> contract.open(ctx, discountRuleID, "0"));
+        }
+        driver.advance(Duration.ofMillis(1));
+        return driver.invoke(ctx -> contract.sweepExpired(ctx, String.valueOf(expiredRules), ""));
+    }
+}
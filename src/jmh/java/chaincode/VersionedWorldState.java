@@ -0,0 +1,92 @@
+package chaincode;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Class: VersionedWorldState
+ *
+ * Committed world state in which every key carries the version of the transaction that
+ * last wrote it, and the MVCC and phantom read checks the peer's validator applies.
+ */
+public class VersionedWorldState {
+    private final NavigableMap<String, Versioned> state = new TreeMap<>();
+    private long version;
+
+    public Versioned get(final String key) {
+        return state.get(key);
+    }
+
+    public NavigableMap<String, Versioned> range(final String startKey, final String endKey) {
+        return endKey == null || endKey.isEmpty() ? state.tailMap(startKey, true) : state.subMap(startKey, true, endKey, false);
+    }
+
+    public int size() {
+        return state.size();
+    }
+
+    /**
+     * Validates an endorsed read set against the current committed state
+     * @param stub endorsement to validate
+     * @return the key or range that conflicts, or null if the transaction is valid
+     */
+    public String conflict(final EndorsingStub stub) {
+        for (Map.Entry<String, Long> read : stub.getReads().entrySet()) {
+            Versioned current = state.get(read.getKey());
+            long currentVersion = current == null ? 0L : current.getVersion();
+            if (currentVersion != read.getValue()) {
+                return read.getKey();
+            }
+        }
+        for (EndorsingStub.RangeRead rangeRead : stub.getRangeReads()) {
+            NavigableMap<String, Versioned> view = range(rangeRead.getStartKey(), rangeRead.getEndKey());
+            if (!rangeRead.isExhausted()) {
+                //分页读取只校验已返回的部分
+                view = rangeRead.getSeen().isEmpty() ? new TreeMap<>()
+                        : view.headMap(rangeRead.getSeen().lastKey(), true);
+            }
+            if (view.size() != rangeRead.getSeen().size()) {
+                return "range[" + rangeRead.getStartKey() + "]";
+            }
+            for (Map.Entry<String, Versioned> entry : view.entrySet()) {
+                Long seen = rangeRead.getSeen().get(entry.getKey());
+                if (seen == null || seen != entry.getValue().getVersion()) {
+                    return "range[" + rangeRead.getStartKey() + "]";
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Applies the write set of a valid transaction
+     */
+    public void commit(final Map<String, byte[]> writes) {
+        version++;
+        for (Map.Entry<String, byte[]> write : writes.entrySet()) {
+            if (write.getValue().length == 0) {
+                state.remove(write.getKey());
+            } else {
+                state.put(write.getKey(), new Versioned(write.getValue(), version));
+            }
+        }
+    }
+
+    public static final class Versioned {
+        private final byte[] value;
+        private final long version;
+
+        Versioned(final byte[] value, final long version) {
+            this.value = value;
+            this.version = version;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+}
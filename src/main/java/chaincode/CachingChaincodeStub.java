@@ -0,0 +1,90 @@
+package chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class: CachingChaincodeStub
+ *
+ * Read-through, write-back state cache for one transaction. Each key is fetched from
+ * the peer at most once and repeated writes to a key are coalesced into one putState
+ * (or delState) when the transaction is flushed. Reads keep Fabric semantics: they
+ * return committed state, never this transaction's pending writes.
+ */
+final class CachingChaincodeStub extends ForwardingChaincodeStub {
+    private static final byte[] DELETED = new byte[0];
+
+    private final Map<String, byte[]> reads = new HashMap<>();
+    private final Map<String, byte[]> writes = new LinkedHashMap<>();
+    private int hits;
+    private int misses;
+    private int coalescedWrites;
+
+    CachingChaincodeStub(final ChaincodeStub delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        byte[] value = reads.get(key);
+        if (value != null) {
+            hits++;
+            return value;
+        }
+        misses++;
+        value = delegate.getState(key);
+        reads.put(key, value == null ? new byte[0] : value);
+        return value;
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        if (writes.put(key, value == null || value.length == 0 ? DELETED : value) != null) {
+            coalescedWrites++;
+        }
+    }
+
+    @Override
+    public void delState(final String key) {
+        if (writes.put(key, DELETED) != null) {
+            coalescedWrites++;
+        }
+    }
+
+    /**
+     * Writes every pending key to the peer once
+     */
+    void flush() {
+        for (Map.Entry<String, byte[]> write : writes.entrySet()) {
+            if (write.getValue() == DELETED) {
+                delegate.delState(write.getKey());
+            } else {
+                delegate.putState(write.getKey(), write.getValue());
+            }
+        }
+        writes.clear();
+    }
+
+    /**
+     * @return getState calls answered without a peer round trip
+     */
+    int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return getState calls forwarded to the peer
+     */
+    int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return putState/delState calls merged into an earlier write of the same key
+     */
+    int getCoalescedWrites() {
+        return coalescedWrites;
+    }
+}
@@ -0,0 +1,142 @@
+package chaincode;
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.metrics.Metrics;
+import org.hyperledger.fabric.shim.ChaincodeBase;
+import org.hyperledger.fabric.shim.ChaincodeServer;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.NettyChaincodeServer;
+import org.hyperledger.fabric.shim.ResponseUtils;
+import org.hyperledger.fabric.traces.Traces;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Class: ChaincodeService
+ *
+ * Launcher for Contract that replaces ContractRouter's classpath scan and metadata build
+ * with routes registered from Contract's @Transaction methods. With CHAINCODE_SERVER_ADDRESS
+ * set it runs as an external chaincode service the peer connects to, otherwise it connects
+ * to the peer like the default launcher. Function names are accepted with or without the
+ * "buyer.Contract:" prefix, as ContractRouter does.
+ *
+ * CHAINCODE_WORKER_THREADS and CHAINCODE_QUEUE_SIZE size the pool that executes the
+ * transactions of a peer connection and its queue of waiting transactions, overriding
+ * TP_CORE_POOL_SIZE, TP_MAX_POOL_SIZE and TP_QUEUE_SIZE of config.props.
+ */
+public final class ChaincodeService extends ChaincodeBase {
+    private static final Logger LOGGER = Logger.getLogger(ChaincodeService.class.getName());
+    static final String WORKER_THREADS = "CHAINCODE_WORKER_THREADS";
+    static final String QUEUE_SIZE = "CHAINCODE_QUEUE_SIZE";
+
+    private final Contract contract = new Contract();
+    private final String namespace;
+    private final Map<String, Method> routes = new HashMap<>();
+
+    public ChaincodeService(final String[] args) {
+        initializeLogging();
+        processEnvironmentOptions();
+        processCommandLineOptions(args);
+        validateOptions();
+        Properties config = getChaincodeConfig();
+        Metrics.initialize(config);
+        Traces.initialize(config);
+
+        namespace = Contract.class.getAnnotation(org.hyperledger.fabric.contract.annotation.Contract.class).name();
+        for (Method method : Contract.class.getMethods()) {
+            Transaction transaction = method.getAnnotation(Transaction.class);
+            if (transaction != null) {
+                routes.put(transaction.name().isEmpty() ? method.getName() : transaction.name(), method);
+            }
+        }
+        LOGGER.info(() -> String.format("Registered %d transactions of %s", routes.size(), namespace));
+    }
+
+    @Override
+    public Properties getChaincodeConfig() {
+        Properties config = super.getChaincodeConfig();
+        String workers = System.getenv(WORKER_THREADS);
+        if (workers != null && !workers.isEmpty()) {
+            config.setProperty("TP_CORE_POOL_SIZE", workers);
+            config.setProperty("TP_MAX_POOL_SIZE", workers);
+        }
+        String queueSize = System.getenv(QUEUE_SIZE);
+        if (queueSize != null && !queueSize.isEmpty()) {
+            config.setProperty("TP_QUEUE_SIZE", queueSize);
+        }
+        return config;
+    }
+
+    @Override
+    public Response init(final ChaincodeStub stub) {
+        return invoke(stub);
+    }
+
+    @Override
+    public Response invoke(final ChaincodeStub stub) {
+        List<String> args = stub.getStringArgs();
+        Context ctx = contract.createContext(stub);
+        boolean completed = false;
+        try {
+            Method method = route(args.isEmpty() ? "" : args.get(0));
+            if (method == null) {
+                contract.unknownTransaction(ctx);
+                return ResponseUtils.newSuccessResponse();
+            }
+            if (method.getParameterCount() != args.size()) {
+                throw Contract.reject(Contract.Message.ARG_NUM_WRONG, args.size() - 1);
+            }
+            //第一个参数是 Context，其余按顺序传入字符串参数
+            Object[] params = args.toArray();
+            params[0] = ctx;
+            contract.beforeTransaction(ctx);
+            Object result = method.invoke(contract, params);
+            contract.afterTransaction(ctx, result);
+            completed = true;
+            return ResponseUtils.newSuccessResponse(result == null ? new byte[0] : result.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (InvocationTargetException e) {
+            return ResponseUtils.newErrorResponse(e.getCause());
+        } catch (IllegalAccessException | RuntimeException e) {
+            return ResponseUtils.newErrorResponse(e);
+        } finally {
+            //失败或抛出 Error 时同样记录并释放当前线程
+            if (!completed) {
+                contract.failTransaction(ctx);
+            }
+        }
+    }
+
+    private Method route(final String function) {
+        int separator = function.lastIndexOf(':');
+        if (separator >= 0 && !namespace.equals(function.substring(0, separator))) {
+            return null;
+        }
+        return routes.get(function.substring(separator + 1));
+    }
+
+    /**
+     * Serves the peer through the given server, returns when the server shuts down
+     */
+    public void startWithChaincodeServer(final ChaincodeServer server) throws IOException, InterruptedException {
+        server.start();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        ChaincodeService service = new ChaincodeService(args);
+        if (service.isServer()) {
+            LOGGER.info("Starting chaincode as server");
+            service.startWithChaincodeServer(new NettyChaincodeServer(service, service.getChaincodeServerConfig()));
+        } else {
+            LOGGER.info("Starting chaincode as client");
+            service.connectToPeer();
+        }
+    }
+}
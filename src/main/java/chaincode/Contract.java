@@ -1,12 +1,30 @@
 package chaincode;
+import org.hyperledger.fabric.contract.ClientIdentity;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.*;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import com.alibaba.fastjson.*;
 
 /**
@@ -29,6 +47,47 @@ import com.alibaba.fastjson.*;
 )
 @Default
 public final class Contract implements ContractInterface {
+    private static final Logger LOGGER = Logger.getLogger(Contract.class.getName());
+    private static final String PARTICIPANT = "participant";
+    private static final String RULE_ORDER = "ruleOrder";
+    private static final String RULE_INDEX = "ruleIndex";
+    private static final String RULE_STATUS = "ruleStatus";
+    private static final String PAYER_TRANS = "payerTrans";
+    private static final String CREDIT = "credit";
+    private static final String STATS = "stats";
+    private static final String STATS_DELTA = "statsDelta";
+    private static final String SELLER = "seller";
+    private static final String RULE = "rule";
+    private static final String EVENT_NAME = "GroupBuyingEvents";
+    //到期索引使用普通键，getStateByRange 不接受组合键
+    private static final String EXPIRY = "expiry~";
+    private static final long EXPIRY_BUCKET_MILLIS = 3600 * 1000L;
+    private static final Pattern EXPIRY_ENTRY = Pattern.compile("expiry~(\\d{10})~(.+)");
+    private static final int PAGE_LIMIT = 1000;
+    //导出时普通键作为一族，从 \u0001 开始的范围不含组合键
+    private static final String SIMPLE_KEYS = "simple";
+    private static final String SIMPLE_KEYS_START = "\u0001";
+    private static final List<String> KEY_FAMILIES = Arrays.asList(SIMPLE_KEYS, PARTICIPANT, RULE_ORDER,
+            RULE_INDEX, RULE_STATUS, PAYER_TRANS, CREDIT, STATS, STATS_DELTA);
+    private static final int STATE_PAGE_LIMIT = 10000;
+    //批量函数每次最多处理的条目数，与导入导出的页大小相同
+    private static final int BATCH_LIMIT = STATE_PAGE_LIMIT;
+    //ImportState 只允许带有 stateAdmin=true 属性（Fabric CA 签发）的客户端调用
+    private static final String STATE_ADMIN = "stateAdmin";
+
+    private final TransactionClock clock;
+
+    public Contract() {
+        this(TransactionClock.TX_TIMESTAMP);
+    }
+
+    /**
+     * @param clock time source of every transaction, replaced in tests
+     */
+    Contract(final TransactionClock clock) {
+        this.clock = clock;
+    }
+
     enum Message {
         NUM_EXCEED("num exceed"),
         RULE_NOT_EXIST("rule '%s' not exist"),
@@ -40,7 +99,18 @@ public final class Contract implements ContractInterface {
         USER_NOT_EXISTING("User '%s' does not exist."),
         GROUP_BUYING_NOT_SUCCESS("this group buying order '%s' not success"),
         Transaction_ERROR("Group buying order '%s' not belong to rule '%s'"),
-        Transaction_NOT_EXIST("this transaction '%s' not exist");
+        Transaction_NOT_EXIST("this transaction '%s' not exist"),
+        Transaction_EXIST("this transaction '%s' already exists"),
+        BATCH_PAYLOAD_ERROR("Batch payload '%s' is not a JSON array"),
+        BATCH_ITEM_ERROR("Batch item %d is malformed"),
+        CREDIT_TOO_LOW("User '%s' credit %s is below %d"),
+        BATCH_REJECTED("No item of the batch succeeded: %s"),
+        KEY_FAMILY_NOT_EXIST("Key family '%s' does not exist, expected one of %s"),
+        BATCH_TOO_LARGE("Batch of %d items exceeds %d"),
+        NOT_STATE_ADMIN("Client '%s' of %s lacks the attribute %s=true"),
+        PAGE_SIZE_ERROR("Page size '%s' is not between 1 and %d"),
+        BOOKMARK_ERROR("Bookmark '%s' is not a key of %s"),
+        USER_ID_BLANK("User ID of batch item %d is blank");
 
         private String tmpl;
 
@@ -53,6 +123,103 @@ public final class Contract implements ContractInterface {
         }
     }
 
+    /**
+     * Rejects the transaction. The Message name travels as the ChaincodeException payload,
+     * so clients can tell failures apart without parsing the text, and the proposal is
+     * never sent for ordering.
+     * @return the exception, for the caller to throw
+     */
+    static ChaincodeException reject(final Message message, final Object... args) {
+        String errorMessage = String.format(message.template(), args);
+        LOGGER.info(() -> message.name() + ": " + errorMessage);
+        return new ChaincodeException(errorMessage, message.name());
+    }
+
+    /**
+     * Parses a numeric argument
+     */
+    private static int intArg(final String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw reject(Message.ARG_NUM_WRONG, value);
+        }
+    }
+
+    /**
+     * Parses a page size argument
+     * @param max largest page size accepted
+     */
+    private static int pageSizeArg(final String value, final int max) {
+        int pageSize = intArg(value);
+        if (pageSize < 1 || pageSize > max) {
+            throw reject(Message.PAGE_SIZE_ERROR, value, max);
+        }
+        return pageSize;
+    }
+
+    /**
+     * Types of the events in the GroupBuyingEvents payload
+     */
+    enum Event {
+        RuleOpened, RuleClosed, GroupCreated, Participated, TransCreated, TransChanged
+    }
+
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new ContractContext(stub);
+    }
+
+    /**
+     * Start metering the transaction
+     */
+    @Override
+    public void beforeTransaction(final Context ctx) {
+        if (ctx instanceof ContractContext) {
+            ((ContractContext) ctx).getMeter().start();
+        }
+    }
+
+    /**
+     * Flush the writes buffered by the transaction's state cache, emit its events as one
+     * GroupBuyingEvents payload and record its metrics
+     */
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        if (ctx instanceof ContractContext) {
+            CachingChaincodeStub cache = ((ContractContext) ctx).getCache();
+            cache.flush();
+            List<JSONObject> events = ((ContractContext) ctx).getEvents();
+            if (!events.isEmpty()) {
+                cache.setEvent(EVENT_NAME, JSON.toJSONBytes(events));
+            }
+            ((ContractContext) ctx).getMeter().stop();
+            LOGGER.fine(() -> String.format("%s state cache: hits=%d misses=%d coalescedWrites=%d",
+                    cache.getTxId(), cache.getHits(), cache.getMisses(), cache.getCoalescedWrites()));
+        }
+    }
+
+    /**
+     * Record a transaction that threw instead of returning. ContractRouter has no hook for
+     * this, there the next beforeTransaction on the same thread records it; until then the
+     * thread holds the failed meter only weakly.
+     */
+    void failTransaction(final Context ctx) {
+        if (ctx instanceof ContractContext) {
+            ((ContractContext) ctx).getMeter().fail();
+        }
+    }
+
+    /**
+     * Metrics of every contract function served by this chaincode process since it started
+     * @param ctx
+     * @return JSON object keyed by function name
+     */
+    @Transaction(name = "GetMetrics", intent = Transaction.TYPE.EVALUATE)
+    public String getMetrics(final Context ctx) {
+        return ContractMetrics.snapshot().toJSONString();
+    }
+
     @Transaction(name = "InitChainCode", intent = Transaction.TYPE.SUBMIT)
     public void initChainCode(final Context ctx) {
         ChaincodeStub stub = ctx.getStub();
@@ -72,51 +239,54 @@ public final class Contract implements ContractInterface {
                      final String groupBuyingID,final String discountRuleID){
         ChaincodeStub stub = ctx.getStub();
         //获取优惠规则
-        String ruleString = stub.getStringState(discountRuleID);
-        //获取信用分信息
-        String credit = stub.getStringState(userID + "-Credit");
+        DiscountRule discountRule = DiscountRule.fromBytes(stub.getState(discountRuleID));
+        //获取信用分信息，读取合并后的信用分及全部增量，扣分提交后立即生效
+        Integer credit = credit(stub, userID);
+        if (credit == null){
+            throw reject(Message.USER_NOT_EXISTING, userID);
+        }
         //判断信用分，进行拼团权限控制
-        if (Integer.parseInt(credit) < 60){
-                return "fail";
-        }else{
-                if (ruleString.isEmpty()){
-                    String errorMessage = String.format(Message.RULE_NOT_EXIST.template(), discountRuleID);
-                    return errorMessage;
-                }
-                JSONObject discountRule =  JSONObject.parseObject(ruleString);
-                String orderIDs = discountRule.getString("orderIDs");
-                if(orderIDs == ""){
-                    discountRule.put("orderIDs", groupBuyingID);
-                }else{
-                    discountRule.put("orderIDs", orderIDs + "-" +groupBuyingID);
-                }
-                String orderNum = discountRule.getString("orderNum");
-                discountRule.put("orderNum", String.valueOf(Integer.parseInt(orderNum)+1));
-                //判断优惠规则状态
-                if (Integer.parseInt(discountRule.getString("ruleState")) == 0){
-                    String errorMessage = String.format(Message.RULE_STATE_ERROR.template(), discountRuleID);
-                    return errorMessage;
-                }else {
-                    Long initTime = System.currentTimeMillis();
-                    //判断优惠规则时限
-                    if (initTime > Long.valueOf(discountRule.getString("endTime"))){
-                        String errorMessage = String.format(Message.RULE_TIMEOUT.template(), discountRuleID);
-                        return errorMessage;
-                    }
-                    Map<String,String> map = new HashMap<>();
-                    map.put("userID",userID);
-                    map.put("sellerID",discountRule.getString("sellerID"));
-                    map.put("groupBuyingID",groupBuyingID);
-                    map.put("initTime",String.valueOf(initTime));
-                    map.put("groupNum",discountRule.getString("groupNum"));
-                    map.put("goodID",discountRule.getString("goodID"));
-                    map.put("currentNum", "1");
-                    map.put("discountRuleID",discountRuleID);
-                    //初始化（新建拼单）
-                    stub.putStringState(groupBuyingID,JSON.toJSONString(map));
-                    return "ok";
+        if (credit < 60){
+            throw reject(Message.CREDIT_TOO_LOW, userID, credit, 60);
         }
-
+        if (discountRule == null){
+            throw reject(Message.RULE_NOT_EXIST, discountRuleID);
+        }
+        //判断优惠规则状态
+        RuleStatus ruleStatus = ruleStatus(stub, discountRuleID);
+        if (ruleStatus.getRuleState() == 0){
+            throw reject(Message.RULE_STATE_ERROR, discountRuleID);
+        }
+        long initTime = clock.currentTimeMillis(stub);
+        //判断优惠规则时限
+        if (initTime > ruleStatus.getEndTime()){
+            throw reject(Message.RULE_TIMEOUT, discountRuleID);
+        }
+        //所有校验通过后才写入
+        GroupBuying groupBuying = new GroupBuying();
+        groupBuying.setUserID(userID);
+        groupBuying.setSellerID(discountRule.getSellerID());
+        groupBuying.setGroupBuyingID(groupBuyingID);
+        groupBuying.setInitTime(initTime);
+        groupBuying.setGroupNum(discountRule.getGroupNum());
+        groupBuying.setGoodID(discountRule.getGoodID());
+        groupBuying.setCurrentNum(1);
+        groupBuying.setDiscountRuleID(discountRuleID);
+        //初始化（新建拼单）
+        stub.putState(groupBuyingID, groupBuying.toBytes());
+        Map<String,String> order = new HashMap<>();
+        order.put("groupBuyingID",groupBuyingID);
+        order.put("userID",userID);
+        order.put("initTime",String.valueOf(initTime));
+        //登记规则下的拼单索引，不回写优惠规则
+        stub.putStringState(stub.createCompositeKey(RULE_ORDER, discountRuleID, groupBuyingID).toString(), JSON.toJSONString(order));
+        JSONObject event = event(ctx, Event.GroupCreated);
+        event.put("groupBuyingID", groupBuyingID);
+        event.put("discountRuleID", discountRuleID);
+        event.put("userID", userID);
+        event.put("groupNum", groupBuying.getGroupNum());
+        event.put("currentNum", groupBuying.getCurrentNum());
+        return "ok";
     }
 
     /**
@@ -124,45 +294,153 @@ public final class Contract implements ContractInterface {
      * @param ctx
      * @param userID
      * @param groupBuyingID
+     * @return "ok"; whether the join is admitted is decided by admission order, see
+     * QueryGroupBuying
      */
     @Transaction(name = "Participate", intent = Transaction.TYPE.SUBMIT)
     public String participate(final Context ctx, final String userID,
                             final String groupBuyingID){
+        admit(ctx, userID, groupBuyingID, ctx.getStub().getTxId(), 0);
+        return "ok";
+    }
+
+    /**
+     * Batch Participate Group Buying
+     * @param ctx
+     * @param participations JSON array of [userID, groupBuyingID] pairs, at most 10000
+     * @return JSON array with the admission ID or the error code of every pair, the batch
+     * is rejected if no pair is accepted
+     */
+    @Transaction(name = "BatchParticipate", intent = Transaction.TYPE.SUBMIT)
+    public String batchParticipate(final Context ctx, final String participations){
+        ChaincodeStub stub = ctx.getStub();
+        JSONArray items = batchItems(participations, 2);
+        List<String> results = new ArrayList<>();
+        //本交易已接受的各拼单参团数，读取不到自己尚未提交的写入，需要自行累计
+        Map<String, Integer> pending = new HashMap<>();
+        int accepted = 0;
+        for (int i = 0; i < items.size(); i++) {
+            JSONArray item = items.getJSONArray(i);
+            String groupBuyingID = item.getString(1);
+            try {
+                //同一交易内的多个参与者以txID-序号区分
+                results.add(admit(ctx, item.getString(0), groupBuyingID, stub.getTxId() + "-" + i,
+                        pending.getOrDefault(groupBuyingID, 0)));
+                pending.merge(groupBuyingID, 1, Integer::sum);
+                accepted++;
+            } catch (ChaincodeException e) {
+                results.add(errorCode(e));
+            }
+        }
+        return batchResults(results, accepted);
+    }
+
+    /**
+     * Record one join of a group buying. Joins are admitted in admission order, the order of
+     * their participant keys, until the group is full. admit does not count the committed
+     * participants: that range read would make concurrent joins of one group invalidate
+     * each other. It rejects joins that this transaction alone would overfill the group
+     * with, and joins of a group that is already settled; InitTrans drops the joins that
+     * end up beyond the group size. Like InitGroup it checks the credit with its pending
+     * deltas, so only a credit change of the same user in the same block invalidates it.
+     * @param ctx
+     * @param userID
+     * @param groupBuyingID
+     * @param admissionID last attribute of the participant key, the txID or txID-index
+     * @param pending joins of this group accepted earlier in the same transaction
+     * @return the admission ID, a join that is rejected writes nothing
+     */
+    private String admit(final Context ctx, final String userID, final String groupBuyingID, final String admissionID,
+                         final int pending) {
         ChaincodeStub stub = ctx.getStub();
         //获取拼单信息
-        String groupBuyingString = stub.getStringState(groupBuyingID);
-        //获取信用分信息
-        String credit = stub.getStringState(userID + "-Credit");
+        GroupBuying groupBuying = GroupBuying.fromBytes(stub.getState(groupBuyingID));
+        //获取信用分信息，与开团相同，读取合并后的信用分及全部增量，扣分提交后立即生效
+        Integer credit = credit(stub, userID);
+        if (credit == null){
+            throw reject(Message.USER_NOT_EXISTING, userID);
+        }
         //判断信用分，进行拼团权限控制
-        if (Integer.parseInt(credit) < 20){
-                return "fail";
-        }else{
-                if (groupBuyingString.isEmpty()){
-                    String errorMessage = String.format(Message.GROUP_BUYING_NOT_EXIST.template(), groupBuyingID);
-                    return errorMessage;
-                }
-                JSONObject groupBuying =  JSONObject.parseObject(groupBuyingString);
-                Long participateTime = System.currentTimeMillis();
-                //判断拼团时间
-                JSONObject discountRule =  JSONObject.parseObject(stub.getStringState(groupBuying.getString("discountRuleID")));
-                if (participateTime > Long.valueOf(discountRule.getString("endTime"))){
-                    String errorMessage = String.format(Message.RULE_TIMEOUT.template(), groupBuying.getString("discountRuleID"));
-                    return errorMessage;
-                }
-                String userNum = String.valueOf(Integer.parseInt(groupBuying.getString("currentNum")) + 1);
-                //判断人数是否超限
-                if (Integer.parseInt(userNum) > Integer.parseInt(groupBuying.getString("groupNum"))){
-                    return Message.NUM_EXCEED.template();
-                }
-                groupBuying.put("currentNum",userNum);
-                stub.putStringState(groupBuyingID,groupBuying.toJSONString());
-                Map<String,String> map = new HashMap<>();
-                map.put("userID", userID);
-                map.put("participateTime", String.valueOf(participateTime));
-                map.put("groupBuyingID",groupBuyingID);
-                //参加拼团
-                stub.putStringState(groupBuyingID+"-"+userNum,JSON.toJSONString(map));
-                return "ok";
+        if (credit < 20){
+            throw reject(Message.CREDIT_TOO_LOW, userID, credit, 20);
+        }
+        if (groupBuying == null){
+            throw reject(Message.GROUP_BUYING_NOT_EXIST, groupBuyingID);
+        }
+        long participateTime = clock.currentTimeMillis(stub);
+        //判断拼团时间，只读取规则状态，不读取规则条款
+        RuleStatus ruleStatus = ruleStatus(stub, groupBuying.getDiscountRuleID());
+        // 优惠规则不存在
+        if (ruleStatus == null) {
+            throw reject(Message.DISCOUNTRULE_NOT_EXISTING, groupBuying.getDiscountRuleID());
+        }
+        if (participateTime > ruleStatus.getEndTime()){
+            throw reject(Message.RULE_TIMEOUT, groupBuying.getDiscountRuleID());
+        }
+        //拼单记录中的currentNum只包含发起人及旧版计数方式加入的参与者，不随参团递增；
+        //本交易内已接受的参团数加上本次参团超过名额时拒绝
+        if (groupBuying.getCurrentNum() + pending >= groupBuying.getGroupNum()){
+            throw reject(Message.NUM_EXCEED);
+        }
+        //已成团的拼单不再接受参团；交易单只在成团时写入一次，读取它不会与并发参团冲突
+        if (TradeTransaction.fromBytes(stub.getState(groupBuyingID + "-" + groupBuying.getDiscountRuleID())) != null){
+            throw reject(Message.NUM_EXCEED);
+        }
+        Participation participation = new Participation();
+        participation.setUserID(userID);
+        participation.setParticipateTime(participateTime);
+        participation.setGroupBuyingID(groupBuyingID);
+        //参加拼团：每个参与者写入独立的组合键，不读写共享计数，同一区块内的并发参团互不冲突
+        stub.putState(participantKey(stub, groupBuyingID, admissionID), participation.toBytes());
+        JSONObject event = event(ctx, Event.Participated);
+        event.put("groupBuyingID", groupBuyingID);
+        event.put("userID", userID);
+        event.put("admissionID", admissionID);
+        event.put("participateTime", participateTime);
+        return admissionID;
+    }
+
+    /**
+     * Participant key of one admission, participant~groupBuyingID~txID
+     */
+    private static String participantKey(final ChaincodeStub stub, final String groupBuyingID, final String admissionID) {
+        return stub.createCompositeKey(PARTICIPANT, groupBuyingID, admissionID).toString();
+    }
+
+    /**
+     * Admission order: by txID, then, within one BatchParticipate, by batch index. Every
+     * endorser derives the same order from the participant keys alone, and a txID, the hash
+     * of the proposal's nonce and creator, is not chosen by the client like a timestamp is.
+     */
+    static final Comparator<String> ADMISSION_ORDER = Comparator.comparing((String admissionID) -> admissionTxID(admissionID))
+            .thenComparingInt(Contract::batchIndex);
+
+    private static String admissionTxID(final String admissionID) {
+        int separator = admissionID.lastIndexOf('-');
+        return separator < 0 ? admissionID : admissionID.substring(0, separator);
+    }
+
+    private static int batchIndex(final String admissionID) {
+        int separator = admissionID.lastIndexOf('-');
+        return separator < 0 ? -1 : Integer.parseInt(admissionID.substring(separator + 1));
+    }
+
+    /**
+     * Joins of a group buying in admission order, from one range read of its participant keys
+     * @param stub
+     * @param groupBuying group buying record
+     * @return participation records keyed by admission ID
+     */
+    private static LinkedHashMap<String, Participation> joinOrder(final ChaincodeStub stub, final GroupBuying groupBuying) {
+        Map<String, Participation> participants = new TreeMap<>(ADMISSION_ORDER);
+        try (QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(PARTICIPANT, groupBuying.getGroupBuyingID())) {
+            for (KeyValue kv : results) {
+                participants.put(stub.splitCompositeKey(kv.getKey()).getAttributes().get(1), Participation.fromBytes(kv.getValue()));
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException(e);
+        }
+        return new LinkedHashMap<>(participants);
     }
 
     /**
@@ -175,16 +453,19 @@ public final class Contract implements ContractInterface {
     public String queryGroupBuying(final Context ctx, final String groupBuyingID){
         ChaincodeStub stub = ctx.getStub();
         //查询当前拼团的状态
-        String groupBuyingString = stub.getStringState(groupBuyingID);
-        if (groupBuyingString.isEmpty()){
-            String errorMessage = String.format(Message.GROUP_BUYING_NOT_EXIST.template(), groupBuyingID);
-            System.out.println(errorMessage);
-            throw new ChaincodeException(errorMessage);
+        GroupBuying groupBuying = GroupBuying.fromBytes(stub.getState(groupBuyingID));
+        if (groupBuying == null){
+            throw reject(Message.GROUP_BUYING_NOT_EXIST, groupBuyingID);
         }
-        JSONObject groupBuying =  JSONObject.parseObject(groupBuyingString);
-        String groupNum = groupBuying.getString("groupNum");
-        String currentNum = groupBuying.getString("currentNum");
-        return "成团人数:" + groupNum + ", 当前人数:" + currentNum;
+        int groupNum = groupBuying.getGroupNum();
+        //按参团顺序，剩余名额内的参团编号已入团，其余未入团
+        List<String> joins = new ArrayList<>(joinOrder(stub, groupBuying).keySet());
+        int capacity = Math.max(groupNum - groupBuying.getCurrentNum(), 0);
+        List<String> admitted = joins.subList(0, Math.min(capacity, joins.size()));
+        List<String> notAdmitted = joins.subList(admitted.size(), joins.size());
+        //当前人数 = 发起人及旧版参与者 + 已入团的组合键参与者
+        int currentNum = groupBuying.getCurrentNum() + admitted.size();
+        return "成团人数:" + groupNum + ", 当前人数:" + currentNum + ", 已入团:" + admitted + ", 未入团:" + notAdmitted;
     }
 
 
@@ -200,20 +481,21 @@ public final class Contract implements ContractInterface {
     @Transaction(name = "InitRule", intent = Transaction.TYPE.SUBMIT)
     public String initRule(final Context ctx, final String sellerID, final String discountRuleID, final String goodID, final String groupNum, final String firstBuyerPrice, final String otherBuyerPrice) {
         ChaincodeStub stub = ctx.getStub();
-        Map<String, String> map = new HashMap<>();
-        map.put("sellerID", sellerID);
-        map.put("goodID", goodID);
-        map.put("groupNum", groupNum);
-        map.put("firstBuyerPrice", firstBuyerPrice);
-        map.put("otherBuyerPrice", otherBuyerPrice);
-        map.put("ruleState", "0");   //"0"为关闭状态 "1"为开放状态  初始化状态为0
-        map.put("duration", "0");   //初始化规则时长为0,单位为毫秒，下同
-        map.put("startTime", "0");  //初始化规则时长为0
-        map.put("endTime", "0");    //初始化规则时长为0
-        map.put("orderNum", "0");
-        map.put("orderIDs", "");
-        //初始化（新建优惠规则）
-        stub.putStringState(discountRuleID, JSON.toJSONString(map));
+        DiscountRule discountRule = new DiscountRule();
+        discountRule.setSellerID(sellerID);
+        discountRule.setGoodID(goodID);
+        discountRule.setGroupNum(intArg(groupNum));
+        discountRule.setFirstBuyerPrice(intArg(firstBuyerPrice));
+        discountRule.setOtherBuyerPrice(intArg(otherBuyerPrice));
+        RuleStatus ruleStatus = new RuleStatus();
+        ruleStatus.setRuleState(0);    //0为关闭状态 1为开放状态  初始化状态为0
+        ruleStatus.setDuration(0);     //初始化规则时长为0,单位为毫秒，下同
+        ruleStatus.setStartTime(0);
+        ruleStatus.setEndTime(0);
+        //初始化（新建优惠规则），条款与状态分开存储
+        stub.putState(discountRuleID, discountRule.toBytes());
+        stub.putState(ruleStatusKey(stub, discountRuleID), ruleStatus.toBytes());
+        putRuleIndex(stub, discountRuleID, discountRule, ruleStatus);
         return "ok";
     }
 
@@ -227,27 +509,31 @@ public final class Contract implements ContractInterface {
     @Transaction(name = "Open", intent = Transaction.TYPE.SUBMIT)
     public String open(final Context ctx, final String discountRuleID, final String duration) {
         ChaincodeStub stub = ctx.getStub();
-        JSONObject discountRule = JSONObject.parseObject(stub.getStringState(discountRuleID));
-        discountRule.put("duration", Integer.parseInt(duration) * 3600);    //用户输入时长单位为分钟
-        Long startTime = System.currentTimeMillis();
+        DiscountRule discountRule = DiscountRule.fromBytes(stub.getState(discountRuleID));
+        long startTime = clock.currentTimeMillis(stub);
         // 优惠规则不存在
-        if (discountRule.isEmpty()) {
-            String errorMessage = String.format(Message.DISCOUNTRULE_NOT_EXISTING.template(), discountRuleID);
-            return errorMessage;
+        if (discountRule == null) {
+            throw reject(Message.DISCOUNTRULE_NOT_EXISTING, discountRuleID);
         }
+        RuleStatus ruleStatus = ruleStatus(stub, discountRuleID);
+        ruleStatus.setDuration(intArg(duration) * 3600L);    //用户输入时长单位为分钟
         //查询当前优惠规则的状态
-        String ruleState = discountRule.getString("ruleState");
-        if (Integer.parseInt(ruleState) == 1) {
-            String errorMessage = String.format(Message.RULE_STATE_ERROR.template(), ruleState);
-            return errorMessage;
-        } else {
-            String endTime = String.valueOf(startTime + Long.valueOf(duration)*3600);
-            discountRule.put("startTime", startTime);
-            discountRule.put("endTime", endTime);
-            discountRule.put("ruleState", "1");
-            stub.putStringState(discountRuleID,JSON.toJSONString(discountRule));
-            return "ok";
+        if (ruleStatus.getRuleState() == 1) {
+            throw reject(Message.RULE_STATE_ERROR, discountRuleID);
         }
+        ruleStatus.setStartTime(startTime);
+        ruleStatus.setEndTime(startTime + ruleStatus.getDuration());
+        ruleStatus.setRuleState(1);
+        //只改写状态键，规则条款不变
+        stub.putState(ruleStatusKey(stub, discountRuleID), ruleStatus.toBytes());
+        putRuleIndex(stub, discountRuleID, discountRule, ruleStatus);
+        //登记到期索引，供 SweepExpired 按时间桶扫描
+        stub.putStringState(expiryKey(discountRuleID, ruleStatus.getEndTime()), String.valueOf(ruleStatus.getEndTime()));
+        JSONObject event = event(ctx, Event.RuleOpened);
+        event.put("discountRuleID", discountRuleID);
+        event.put("startTime", ruleStatus.getStartTime());
+        event.put("endTime", ruleStatus.getEndTime());
+        return "ok";
     }
 
     /**
@@ -259,31 +545,108 @@ public final class Contract implements ContractInterface {
     @Transaction(name = "Close", intent = Transaction.TYPE.SUBMIT)
     public String close(final Context ctx, final String discountRuleID) {
         ChaincodeStub stub = ctx.getStub();
-        JSONObject discountRule = JSONObject.parseObject(stub.getStringState(discountRuleID));
-        //获取当前时间
-        Long currentTime = System.currentTimeMillis();
-        String endTime = discountRule.getString("endTime");
-        if (Long.valueOf(endTime)<currentTime){
-                return "fail";
-        }else{
-                // 优惠规则不存在
-                if (discountRule.isEmpty()) {
-                    String errorMessage = String.format(Message.DISCOUNTRULE_NOT_EXISTING.template(), discountRuleID);
-                    return errorMessage;
+        RuleStatus ruleStatus = ruleStatus(stub, discountRuleID);
+        // 优惠规则不存在
+        if (ruleStatus == null) {
+            throw reject(Message.DISCOUNTRULE_NOT_EXISTING, discountRuleID);
+        }
+        //获取当前时间，已到期的规则由 SweepExpired 关闭
+        long currentTime = clock.currentTimeMillis(stub);
+        if (ruleStatus.getEndTime()<currentTime){
+            throw reject(Message.RULE_TIMEOUT, discountRuleID);
+        }
+        //查询当前优惠规则的状态
+        if (ruleStatus.getRuleState() == 0) {
+            throw reject(Message.RULE_STATE_ERROR, discountRuleID);
+        }
+        closeRule(ctx, discountRuleID, ruleStatus);
+        return "ok";
+    }
+
+    /**
+     * Sweep Expired Rules, closes open rules whose endTime has passed. Only the expiry
+     * buckets up to the current one are scanned, so the cost follows the number of
+     * expired rules rather than the number of rules. Rules opened before the expiry index
+     * existed are swept once ReindexState has indexed them.
+     *
+     * @param ctx      context
+     * @param pageSize number of expiry entries to look at, at most 1000
+     * @param bookmark bookmark returned by the previous call, empty to start from the oldest bucket
+     * @return IDs of the rules closed and the bookmark to continue from, empty when the sweep is done
+     */
+    @Transaction(name = "SweepExpired", intent = Transaction.TYPE.SUBMIT)
+    public String sweepExpired(final Context ctx, final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        long currentTime = clock.currentTimeMillis(stub);
+        //扫描到当前时间桶为止，当前桶内尚未到期的规则跳过
+        String endKey = expiryKey("", currentTime + EXPIRY_BUCKET_MILLIS);
+        int limit = pageSizeArg(pageSize, PAGE_LIMIT);
+        //书签只能落在到期索引的扫描范围内，否则会扫描并删除其他键
+        String startKey = bookmark == null || bookmark.isEmpty() ? EXPIRY : bookmark;
+        if (!startKey.startsWith(EXPIRY) || startKey.compareTo(endKey) >= 0) {
+            throw reject(Message.BOOKMARK_ERROR, bookmark, "the expiry index");
+        }
+        List<JSONObject> closed = new ArrayList<>();
+        String nextBookmark = "";
+        int scanned = 0;
+        //peer 不允许在分页查询之后写入，提交交易使用普通范围查询，读满一页后自行截断
+        try (QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey)) {
+            for (KeyValue kv : results) {
+                if (scanned++ == limit) {
+                    nextBookmark = kv.getKey();
+                    break;
+                }
+                //只处理 expiry~桶号~规则ID 形式且值与桶号一致的索引项，其余键不动
+                Matcher entry = EXPIRY_ENTRY.matcher(kv.getKey());
+                long endTime;
+                try {
+                    endTime = Long.parseLong(kv.getStringValue());
+                } catch (NumberFormatException e) {
+                    continue;
                 }
-                //查询当前优惠规则的状态
-                String ruleState = discountRule.getString("ruleState");
-                if (Integer.parseInt(ruleState) == 0) {
-                    String errorMessage = String.format(Message.RULE_STATE_ERROR.template(), ruleState);
-                    return errorMessage;
+                if (!entry.matches() || !kv.getKey().equals(expiryKey(entry.group(2), endTime)) || endTime >= currentTime) {
+                    continue;
+                }
+                String discountRuleID = entry.group(2);
+                RuleStatus ruleStatus = ruleStatus(stub, discountRuleID);
+                if (ruleStatus != null && ruleStatus.getRuleState() == 1 && ruleStatus.getEndTime() == endTime) {
+                    closeRule(ctx, discountRuleID, ruleStatus);
+                    JSONObject record = new JSONObject(true);
+                    record.put("discountRuleID", discountRuleID);
+                    record.put("endTime", endTime);
+                    closed.add(record);
                 } else {
-                    discountRule.put("duration", "0");
-                    discountRule.put("startTime", "0");
-                    discountRule.put("endTime", "0");
-                    discountRule.put("ruleState", "0");
-                    stub.putStringState(discountRuleID,JSON.toJSONString(discountRule));
-                    return "ok";
+                    //规则已被关闭或重新开放，索引项已失效
+                    stub.delState(kv.getKey());
+                }
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException(e);
         }
+        return page(closed, nextBookmark);
+    }
+
+    /**
+     * Close an open rule and drop its expiry entry
+     */
+    private static void closeRule(final Context ctx, final String discountRuleID, final RuleStatus ruleStatus) {
+        ChaincodeStub stub = ctx.getStub();
+        stub.delState(expiryKey(discountRuleID, ruleStatus.getEndTime()));
+        ruleStatus.setDuration(0);
+        ruleStatus.setStartTime(0);
+        ruleStatus.setEndTime(0);
+        ruleStatus.setRuleState(0);
+        stub.putState(ruleStatusKey(stub, discountRuleID), ruleStatus.toBytes());
+        putRuleIndex(stub, discountRuleID, DiscountRule.fromBytes(stub.getState(discountRuleID)), ruleStatus);
+        event(ctx, Event.RuleClosed).put("discountRuleID", discountRuleID);
+    }
+
+    /**
+     * Expiry entry of a rule, expiry~bucket~discountRuleID. Buckets are hours since the
+     * epoch, zero-padded so that key order is time order.
+     */
+    private static String expiryKey(final String discountRuleID, final long endTime) {
+        return String.format("%s%010d~%s", EXPIRY, endTime / EXPIRY_BUCKET_MILLIS, discountRuleID);
     }
 
     /**
@@ -291,26 +654,37 @@ public final class Contract implements ContractInterface {
      *
      * @param ctx            context
      * @param discountRuleID
-     * @return orderNum and orderIDs
+     * @param pageSize       number of orders per page
+     * @param bookmark       bookmark returned by the previous page, empty for the first page
+     * @return orderIDs of this page and the bookmark of the next page
      */
     @Transaction(name = "QueryParticipation", intent = Transaction.TYPE.EVALUATE)
-    public String queryParticipation(final Context ctx, final String discountRuleID) {
+    public String queryParticipation(final Context ctx, final String discountRuleID, final String pageSize, final String bookmark) {
         ChaincodeStub stub = ctx.getStub();
-        JSONObject discountRule = JSONObject.parseObject(stub.getStringState(discountRuleID));
+        DiscountRule discountRule = DiscountRule.fromBytes(stub.getState(discountRuleID));
 
         // 优惠规则不存在
-        if (discountRule.isEmpty()) {
-            String errorMessage = String.format(Message.DISCOUNTRULE_NOT_EXISTING.template(), discountRuleID);
-            System.out.println(errorMessage);
-            throw new ChaincodeException(errorMessage);
+        if (discountRule == null) {
+            throw reject(Message.DISCOUNTRULE_NOT_EXISTING, discountRuleID);
         }
 
-        String orderNum = (String) discountRule.get("orderNum");
-        String orderIDs = (String) discountRule.get("orderIDs");
-        if (Integer.parseInt(orderNum) == 0) {
+        //分页扫描规则下的拼单索引
+        int limit = pageSizeArg(pageSize, PAGE_LIMIT);
+        List<String> orderIDs = new ArrayList<>();
+        String nextBookmark;
+        try (QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                new CompositeKey(RULE_ORDER, discountRuleID), limit, bookmark)) {
+            for (KeyValue kv : results) {
+                orderIDs.add(stub.splitCompositeKey(kv.getKey()).getAttributes().get(1));
+            }
+            nextBookmark = results.getMetadata().getBookmark();
+        } catch (Exception e) {
+            throw new ChaincodeException(e);
+        }
+        if (orderIDs.isEmpty()) {
             return "目前没有拼单参与。";
         } else {
-            return "成功拼单数量：" + orderNum + ", \n成功拼单号分别为: " + orderIDs;
+            return "本页拼单数量：" + orderIDs.size() + ", \n拼单号分别为: " + String.join("-", orderIDs) + ", \n下一页书签: " + nextBookmark;
         }
 
     }
@@ -325,139 +699,785 @@ public final class Contract implements ContractInterface {
     @Transaction(name = "QueryState", intent = Transaction.TYPE.EVALUATE)
     public String queryState(final Context ctx, final String discountRuleID) {
         ChaincodeStub stub = ctx.getStub();
-        JSONObject discountRule = JSONObject.parseObject(stub.getStringState(discountRuleID));
+        RuleStatus ruleStatus = ruleStatus(stub, discountRuleID);
 
         // 优惠规则不存在
-        if (discountRule.isEmpty()) {
-            String errorMessage = String.format(Message.DISCOUNTRULE_NOT_EXISTING.template(), discountRuleID);
-            System.out.println(errorMessage);
-            throw new ChaincodeException(errorMessage);
+        if (ruleStatus == null) {
+            throw reject(Message.DISCOUNTRULE_NOT_EXISTING, discountRuleID);
         }
 
-        String ruleState = (String) discountRule.get("ruleState");
-        if (Integer.parseInt(ruleState) == 0) {
+        if (ruleStatus.getRuleState() == 0) {
             return "优惠规则" + discountRuleID + "目前的状态为关闭。";
         } else {
-            long currentTime = System.currentTimeMillis();
-            long endTime = Long.valueOf(discountRule.getString("endTime"));
+            long currentTime = clock.currentTimeMillis(stub);
+            long endTime = ruleStatus.getEndTime();
             return "优惠规则：" + discountRuleID + "目前的状态仍为开放，\n并且将在" + (endTime - currentTime) / 3600 + "分" + (endTime - currentTime) % 3600 + "秒后关闭";
         }
     }
 
 
+    /**
+     * Status of a rule, from ruleStatus~discountRuleID or, for rules written before the
+     * split, from the rule record
+     * @return the status, or null if the rule does not exist
+     */
+    private static RuleStatus ruleStatus(final ChaincodeStub stub, final String discountRuleID) {
+        RuleStatus ruleStatus = RuleStatus.fromBytes(stub.getState(ruleStatusKey(stub, discountRuleID)));
+        if (ruleStatus == null) {
+            ruleStatus = RuleStatus.fromRule(stub.getState(discountRuleID));
+        }
+        return ruleStatus;
+    }
+
+    private static String ruleStatusKey(final ChaincodeStub stub, final String discountRuleID) {
+        return stub.createCompositeKey(RULE_STATUS, discountRuleID).toString();
+    }
+
+    /**
+     * JSON projection of a rule for CouchDB rich queries, the rule itself is stored binary
+     */
+    private static void putRuleIndex(final ChaincodeStub stub, final String discountRuleID, final DiscountRule discountRule,
+                                     final RuleStatus ruleStatus) {
+        JSONObject ruleIndex = new JSONObject(true);
+        ruleIndex.put("docType", RULE_INDEX);
+        ruleIndex.put("discountRuleID", discountRuleID);
+        ruleIndex.put("sellerID", discountRule.getSellerID());
+        ruleIndex.put("goodID", discountRule.getGoodID());
+        ruleIndex.put("ruleState", ruleStatus.getRuleState());
+        ruleIndex.put("endTime", ruleStatus.getEndTime());
+        stub.putStringState(stub.createCompositeKey(RULE_INDEX, discountRuleID).toString(), ruleIndex.toJSONString());
+    }
+
+    /**
+     * Query Rules By Seller
+     *
+     * @param ctx      context
+     * @param sellerID
+     * @param pageSize number of rules per page
+     * @param bookmark bookmark returned by the previous page, empty for the first page
+     * @return rules of this page and the bookmark of the next page
+     */
+    @Transaction(name = "QueryRulesBySeller", intent = Transaction.TYPE.EVALUATE)
+    public String queryRulesBySeller(final Context ctx, final String sellerID, final String pageSize, final String bookmark) {
+        JSONObject selector = new JSONObject(true);
+        selector.put("docType", RULE_INDEX);
+        selector.put("sellerID", sellerID);
+        return richQuery(ctx.getStub(), selector, "indexSellerRules", pageSize, bookmark);
+    }
+
+    /**
+     * Query Open Rules, rules that are open and not yet timed out
+     *
+     * @param ctx      context
+     * @param pageSize number of rules per page
+     * @param bookmark bookmark returned by the previous page, empty for the first page
+     * @return rules of this page and the bookmark of the next page
+     */
+    @Transaction(name = "QueryOpenRules", intent = Transaction.TYPE.EVALUATE)
+    public String queryOpenRules(final Context ctx, final String pageSize, final String bookmark) {
+        JSONObject selector = new JSONObject(true);
+        selector.put("docType", RULE_INDEX);
+        selector.put("ruleState", 1);
+        JSONObject endTime = new JSONObject();
+        endTime.put("$gt", clock.currentTimeMillis(ctx.getStub()));
+        selector.put("endTime", endTime);
+        return richQuery(ctx.getStub(), selector, "indexOpenRules", pageSize, bookmark);
+    }
+
+    private static String richQuery(final ChaincodeStub stub, final JSONObject selector, final String index,
+                                    final String pageSize, final String bookmark) {
+        JSONObject query = new JSONObject(true);
+        query.put("selector", selector);
+        query.put("use_index", new String[]{"_design/" + index + "Doc", index});
+        int limit = pageSizeArg(pageSize, PAGE_LIMIT);
+        List<JSONObject> records = new ArrayList<>();
+        try (QueryResultsIteratorWithMetadata<KeyValue> results = stub.getQueryResultWithPagination(
+                query.toJSONString(), limit, bookmark)) {
+            for (KeyValue kv : results) {
+                JSONObject record = MeteringChaincodeStub.json(() -> JSONObject.parseObject(kv.getStringValue()));
+                record.remove("docType");
+                records.add(record);
+            }
+            return page(records, results.getMetadata().getBookmark());
+        } catch (Exception e) {
+            throw new ChaincodeException(e);
+        }
+    }
+
+    /**
+     * Query Groups By Rule
+     *
+     * @param ctx            context
+     * @param discountRuleID
+     * @param pageSize       number of group buyings per page
+     * @param bookmark       bookmark returned by the previous page, empty for the first page
+     * @return group buyings of this page and the bookmark of the next page
+     */
+    @Transaction(name = "QueryGroupsByRule", intent = Transaction.TYPE.EVALUATE)
+    public String queryGroupsByRule(final Context ctx, final String discountRuleID, final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        int limit = pageSizeArg(pageSize, PAGE_LIMIT);
+        List<JSONObject> records = new ArrayList<>();
+        try (QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                new CompositeKey(RULE_ORDER, discountRuleID), limit, bookmark)) {
+            for (KeyValue kv : results) {
+                records.add(MeteringChaincodeStub.json(() -> JSONObject.parseObject(kv.getStringValue())));
+            }
+            return page(records, results.getMetadata().getBookmark());
+        } catch (Exception e) {
+            throw new ChaincodeException(e);
+        }
+    }
+
+    /**
+     * Query Transactions By Payer
+     *
+     * @param ctx      context
+     * @param payerID
+     * @param pageSize number of transactions per page
+     * @param bookmark bookmark returned by the previous page, empty for the first page
+     * @return transactions of this page, with the sum of the payer's payments, and the
+     * bookmark of the next page; transactions that no longer exist are left out
+     */
+    @Transaction(name = "QueryTransByPayer", intent = Transaction.TYPE.EVALUATE)
+    public String queryTransByPayer(final Context ctx, final String payerID, final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        int limit = pageSizeArg(pageSize, PAGE_LIMIT);
+        List<JSONObject> records = new ArrayList<>();
+        try (QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                new CompositeKey(PAYER_TRANS, payerID), limit, bookmark)) {
+            for (KeyValue kv : results) {
+                String transID = kv.getStringValue();
+                TradeTransaction transaction = TradeTransaction.fromBytes(stub.getState(transID));
+                //交易单已被删除时跳过其索引项，该页因此可能少于 pageSize 条
+                if (transaction == null) {
+                    continue;
+                }
+                //同一付款人可能在一个交易单中出现多次（发起人同时参团），合计其全部付款
+                int payment = 0;
+                for (int i = 0; i < transaction.getPayerIDs().size(); i++) {
+                    if (transaction.getPayerIDs().get(i).equals(payerID)) {
+                        payment += transaction.getPayments().get(i);
+                    }
+                }
+                JSONObject record = new JSONObject(true);
+                record.put("transID", transID);
+                record.put("transState", transaction.getTransState());
+                record.put("payee", transaction.getPayee());
+                record.put("payment", payment);
+                records.add(record);
+            }
+            return page(records, results.getMetadata().getBookmark());
+        } catch (Exception e) {
+            throw new ChaincodeException(e);
+        }
+    }
+
+    private static String page(final List<JSONObject> records, final String bookmark) {
+        JSONObject page = new JSONObject(true);
+        page.put("records", records);
+        page.put("bookmark", bookmark);
+        return page.toJSONString();
+    }
+
+    /**
+     * Query Seller Stats
+     *
+     * @param ctx      context
+     * @param sellerID
+     * @return completed groups, buyers and receivables of the seller's rules
+     */
+    @Transaction(name = "QuerySellerStats", intent = Transaction.TYPE.EVALUATE)
+    public String querySellerStats(final Context ctx, final String sellerID) {
+        return stats(ctx.getStub(), SELLER, sellerID).toJSONString();
+    }
+
+    /**
+     * Query Rule Stats
+     *
+     * @param ctx            context
+     * @param discountRuleID
+     * @return completed groups, buyers and receivables of the rule
+     */
+    @Transaction(name = "QueryRuleStats", intent = Transaction.TYPE.EVALUATE)
+    public String queryRuleStats(final Context ctx, final String discountRuleID) {
+        return stats(ctx.getStub(), RULE, discountRuleID).toJSONString();
+    }
+
+    /**
+     * Rolled-up totals plus the deltas written since the last rollup
+     */
+    private static JSONObject stats(final ChaincodeStub stub, final String scope, final String id) {
+        SalesStats stats = SalesStats.fromBytes(stub.getState(stub.createCompositeKey(STATS, scope, id).toString()));
+        int pending = 0;
+        try (QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(STATS_DELTA, scope, id)) {
+            for (KeyValue delta : results) {
+                stats.add(SalesStats.fromBytes(delta.getValue()));
+                pending++;
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException(e);
+        }
+        JSONObject record = new JSONObject(true);
+        record.put(SELLER.equals(scope) ? "sellerID" : "discountRuleID", id);
+        record.put("groups", stats.getGroups());
+        record.put("buyers", stats.getBuyers());
+        record.put("receivables", stats.getReceivables());
+        record.put("pendingDeltas", pending);
+        return record;
+    }
+
+
     /**
     platform
      */
     @Transaction(name = "InitCredit", intent = Transaction.TYPE.SUBMIT)
     public String initCredit(final Context ctx, final String userID) {
         ChaincodeStub stub = ctx.getStub();
-        stub.putStringState(userID + "-Credit", "100");
+        resetCredit(stub, userID);
         return "ok";
     }
 
+    /**
+     * Rollup Stats, adds up to pageSize pending stats deltas into the seller and rule totals
+     * and deletes them. Folded deltas are gone, so every call starts from the first pending
+     * one and needs no bookmark; call again while more is true.
+     *
+     * @param ctx      context
+     * @param pageSize number of deltas to fold
+     * @return number of deltas folded and whether more are pending
+     */
+    @Transaction(name = "RollupStats", intent = Transaction.TYPE.SUBMIT)
+    public String rollupStats(final Context ctx, final String pageSize) {
+        ChaincodeStub stub = ctx.getStub();
+        int limit = pageSizeArg(pageSize, PAGE_LIMIT);
+        Map<String, SalesStats> totals = new LinkedHashMap<>();
+        int folded = 0;
+        boolean more = false;
+        //提交交易中不能用分页查询，读满一页后截断；汇总键只由本函数写入
+        try (QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(new CompositeKey(STATS_DELTA))) {
+            for (KeyValue delta : results) {
+                if (folded == limit) {
+                    more = true;
+                    break;
+                }
+                List<String> attributes = stub.splitCompositeKey(delta.getKey()).getAttributes();
+                String totalKey = stub.createCompositeKey(STATS, attributes.get(0), attributes.get(1)).toString();
+                totals.computeIfAbsent(totalKey, key -> SalesStats.fromBytes(stub.getState(key)))
+                        .add(SalesStats.fromBytes(delta.getValue()));
+                stub.delState(delta.getKey());
+                folded++;
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException(e);
+        }
+        for (Map.Entry<String, SalesStats> total : totals.entrySet()) {
+            stub.putState(total.getKey(), total.getValue().toBytes());
+        }
+        JSONObject result = new JSONObject(true);
+        result.put("folded", folded);
+        result.put("more", more);
+        return result.toJSONString();
+    }
+
+    /**
+     * Export State, one page of one key family for restores, migrations and analytics.
+     * Records are [key, base64 value] pairs in key order; pass the returned bookmark to
+     * get the next page, an empty bookmark means the family is done.
+     *
+     * @param ctx      context
+     * @param family   "simple" for rules, group buyings, trade transactions and credit
+     *                 balances, otherwise the object type of a composite key family
+     * @param pageSize number of records, at most 10000
+     * @param bookmark bookmark returned by the previous page, empty for the first page
+     * @return records of this page and the bookmark of the next page
+     */
+    @Transaction(name = "ExportState", intent = Transaction.TYPE.EVALUATE)
+    public String exportState(final Context ctx, final String family, final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        if (!KEY_FAMILIES.contains(family)) {
+            throw reject(Message.KEY_FAMILY_NOT_EXIST, family, KEY_FAMILIES);
+        }
+        int limit = pageSizeArg(pageSize, STATE_PAGE_LIMIT);
+        JSONArray records = new JSONArray(limit);
+        try (QueryResultsIteratorWithMetadata<KeyValue> results = SIMPLE_KEYS.equals(family)
+                ? stub.getStateByRangeWithPagination(SIMPLE_KEYS_START, "", limit, bookmark)
+                : stub.getStateByPartialCompositeKeyWithPagination(new CompositeKey(family), limit, bookmark)) {
+            Base64.Encoder encoder = Base64.getEncoder();
+            for (KeyValue kv : results) {
+                records.add(new JSONArray(Arrays.asList(kv.getKey(), encoder.encodeToString(kv.getValue()))));
+            }
+            JSONObject page = new JSONObject(true);
+            page.put("family", family);
+            page.put("records", records);
+            page.put("bookmark", results.getMetadata().getBookmark());
+            return page.toJSONString();
+        } catch (Exception e) {
+            throw new ChaincodeException(e);
+        }
+    }
+
+    /**
+     * Reindex State, writes the payerTrans and ruleIndex entries of trade transactions and
+     * rules, and the expiry entries of open rules, created before those indexes existed.
+     * Entries are derived from the records alone, so running it again or for records that
+     * are already indexed changes nothing.
+     *
+     * @param ctx      context
+     * @param pageSize number of plain keys to look at, at most 1000
+     * @param bookmark bookmark returned by the previous call, empty to start from the first key
+     * @return number of records indexed and the bookmark to continue from, empty when done
+     */
+    @Transaction(name = "ReindexState", intent = Transaction.TYPE.SUBMIT)
+    public String reindexState(final Context ctx, final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        int limit = pageSizeArg(pageSize, PAGE_LIMIT);
+        //交易单与规则都是普通键，书签不能落在组合键范围内
+        String startKey = bookmark == null || bookmark.isEmpty() ? SIMPLE_KEYS_START : bookmark;
+        if (startKey.compareTo(SIMPLE_KEYS_START) < 0) {
+            throw reject(Message.BOOKMARK_ERROR, bookmark, "the plain keys");
+        }
+        int indexed = 0;
+        String nextBookmark = "";
+        int scanned = 0;
+        //peer 不允许在分页查询之后写入，提交交易使用普通范围查询，读满一页后自行截断
+        try (QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, "")) {
+            for (KeyValue kv : results) {
+                if (scanned++ == limit) {
+                    nextBookmark = kv.getKey();
+                    break;
+                }
+                String key = kv.getKey();
+                TradeTransaction transaction = TradeTransaction.fromBytes(kv.getValue());
+                DiscountRule discountRule = transaction == null ? DiscountRule.fromBytes(kv.getValue()) : null;
+                if (transaction != null) {
+                    for (String payerID : new LinkedHashSet<>(transaction.getPayerIDs())) {
+                        stub.putStringState(stub.createCompositeKey(PAYER_TRANS, payerID, key).toString(), key);
+                    }
+                    indexed++;
+                } else if (discountRule != null) {
+                    RuleStatus ruleStatus = ruleStatus(stub, key);
+                    putRuleIndex(stub, key, discountRule, ruleStatus);
+                    //开放中的规则登记到期索引，供 SweepExpired 关闭
+                    if (ruleStatus.getRuleState() == 1) {
+                        stub.putStringState(expiryKey(key, ruleStatus.getEndTime()), String.valueOf(ruleStatus.getEndTime()));
+                    }
+                    indexed++;
+                }
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException(e);
+        }
+        JSONObject result = new JSONObject(true);
+        result.put("indexed", indexed);
+        result.put("bookmark", nextBookmark);
+        return result.toJSONString();
+    }
+
+    /**
+     * Import State, writes a batch of records as returned by ExportState. Existing keys
+     * are overwritten; nothing is read, so batches of different key ranges can be
+     * submitted concurrently. Only clients whose certificate carries the attribute
+     * stateAdmin=true may import.
+     *
+     * @param ctx     context
+     * @param records JSON array of [key, base64 value], at most 10000
+     * @return number of records written
+     */
+    @Transaction(name = "ImportState", intent = Transaction.TYPE.SUBMIT)
+    public String importState(final Context ctx, final String records) {
+        ChaincodeStub stub = ctx.getStub();
+        ClientIdentity identity = ctx.getClientIdentity();
+        if (!identity.assertAttributeValue(STATE_ADMIN, "true")) {
+            throw reject(Message.NOT_STATE_ADMIN, identity.getId(), identity.getMSPID(), STATE_ADMIN);
+        }
+        JSONArray items = batchItems(records, 2);
+        //先校验整批再写入，校验失败时不写任何键
+        Base64.Decoder decoder = Base64.getDecoder();
+        List<String> keys = new ArrayList<>(items.size());
+        List<byte[]> values = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            JSONArray item = items.getJSONArray(i);
+            Object key = item.get(0);
+            Object value = item.get(1);
+            if (!(key instanceof String) || ((String) key).isEmpty() || !(value instanceof String)) {
+                throw reject(Message.BATCH_ITEM_ERROR, i);
+            }
+            try {
+                values.add(decoder.decode((String) value));
+            } catch (IllegalArgumentException e) {
+                throw reject(Message.BATCH_ITEM_ERROR, i);
+            }
+            keys.add((String) key);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            stub.putState(keys.get(i), values.get(i));
+        }
+        JSONObject result = new JSONObject(true);
+        result.put("imported", keys.size());
+        return result.toJSONString();
+    }
+
+    /**
+     * Batch Initialize Credit
+     * @param ctx
+     * @param userIDs JSON array of userIDs, at most 10000
+     * @return JSON array with "ok" or the error code of every user, the batch is rejected
+     * if no user is valid
+     */
+    @Transaction(name = "BatchInitCredit", intent = Transaction.TYPE.SUBMIT)
+    public String batchInitCredit(final Context ctx, final String userIDs) {
+        ChaincodeStub stub = ctx.getStub();
+        JSONArray items = batchItems(userIDs, 0);
+        List<String> results = new ArrayList<>();
+        List<String> valid = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            try {
+                valid.add(batchUserID(items.getString(i), i));
+                results.add("ok");
+            } catch (ChaincodeException e) {
+                results.add(errorCode(e));
+            }
+        }
+        //全部失败时拒绝整笔交易，不写入任何信用分
+        String batchResults = batchResults(results, valid.size());
+        for (String userID : valid) {
+            resetCredit(stub, userID);
+        }
+        return batchResults;
+    }
+
+    /**
+     * Change Credit, the change is appended as a credit~userID~txID delta instead of
+     * rewriting userID-Credit, so concurrent changes of one user do not conflict
+     * @param ctx
+     * @param userID
+     * @param changeValue
+     * @return
+     */
     @Transaction(name = "ChangeCredit", intent = Transaction.TYPE.SUBMIT)
     public String changeCredit(final Context ctx, final String userID, final String changeValue) {
         ChaincodeStub stub = ctx.getStub();
-        String oldCredit = stub.getStringState(userID + "-Credit");
-        try {
-            Integer.valueOf(changeValue);
+        intArg(changeValue);
+        if (stub.getStringState(userID + "-Credit").isEmpty()) {
+            throw reject(Message.USER_NOT_EXISTING, userID);
+        }
+        stub.putStringState(stub.createCompositeKey(CREDIT, userID, stub.getTxId()).toString(), changeValue);
+        return "ok";
+
+    }
+
+    /**
+     * Batch Change Credit, changes of the same user are applied in order
+     * @param ctx
+     * @param changes JSON array of [userID, changeValue] pairs, at most 10000
+     * @return JSON array with "ok" or the error code of every pair, the batch is rejected
+     * if no pair is valid
+     */
+    @Transaction(name = "BatchChangeCredit", intent = Transaction.TYPE.SUBMIT)
+    public String batchChangeCredit(final Context ctx, final String changes) {
+        ChaincodeStub stub = ctx.getStub();
+        JSONArray items = batchItems(changes, 2);
+        List<String> results = new ArrayList<>();
+        int valid = 0;
+        //同一用户的多次变更在本地累加，每个用户只写一条增量
+        Map<String, Integer> credits = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            JSONArray item = items.getJSONArray(i);
+            String changeValue = item.getString(1);
+            try {
+                String userID = batchUserID(item.getString(0), i);
+                int change = intArg(changeValue);
+                if (!credits.containsKey(userID)) {
+                    if (stub.getStringState(userID + "-Credit").isEmpty()) {
+                        throw reject(Message.USER_NOT_EXISTING, userID);
+                    }
+                    credits.put(userID, 0);
+                }
+                credits.put(userID, credits.get(userID) + change);
+                results.add("ok");
+                valid++;
+            } catch (ChaincodeException e) {
+                results.add(errorCode(e));
+            }
+        }
+        //全部失败时拒绝整笔交易，不写入任何增量
+        String batchResults = batchResults(results, valid);
+        for (Map.Entry<String, Integer> credit : credits.entrySet()) {
+            stub.putStringState(stub.createCompositeKey(CREDIT, credit.getKey(), stub.getTxId()).toString(),
+                    String.valueOf(credit.getValue()));
+        }
+        return batchResults;
+    }
+
+    /**
+     * Compact Credit, folds up to pageSize pending deltas of a user into userID-Credit and
+     * deletes them. The folded sum is stored unclamped so that folding in pages gives the
+     * same score as folding at once; call again while more is true.
+     * @param ctx
+     * @param userID
+     * @param pageSize number of deltas to fold
+     * @return number of deltas folded and whether more are pending
+     */
+    @Transaction(name = "CompactCredit", intent = Transaction.TYPE.SUBMIT)
+    public String compactCredit(final Context ctx, final String userID, final String pageSize) {
+        ChaincodeStub stub = ctx.getStub();
+        int limit = pageSizeArg(pageSize, PAGE_LIMIT);
+        String base = stub.getStringState(userID + "-Credit");
+        if (base.isEmpty()) {
+            throw reject(Message.USER_NOT_EXISTING, userID);
+        }
+        int credit = Integer.parseInt(base);
+        int folded = 0;
+        boolean more = false;
+        //提交交易中不能用分页查询，读满一页后截断
+        try (QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(CREDIT, userID)) {
+            for (KeyValue delta : results) {
+                if (folded == limit) {
+                    more = true;
+                    break;
+                }
+                credit += Integer.parseInt(delta.getStringValue());
+                stub.delState(delta.getKey());
+                folded++;
+            }
         } catch (Exception e) {
-            String errorMessage = String.format(Message.ARG_NUM_WRONG.template(), changeValue);
-            return errorMessage;
+            throw new ChaincodeException(e);
+        }
+        stub.putStringState(userID + "-Credit", String.valueOf(credit));
+        JSONObject result = new JSONObject(true);
+        result.put("folded", folded);
+        result.put("more", more);
+        return result.toJSONString();
+    }
+
+    /**
+     * Credit score of a user, userID-Credit plus every pending delta, clamped to zero. The
+     * stored sum is not clamped, so the score does not depend on when deltas are folded.
+     * @param stub
+     * @param userID
+     * @return the score, or null if the user has no credit
+     */
+    private static Integer credit(final ChaincodeStub stub, final String userID) {
+        String base = stub.getStringState(userID + "-Credit");
+        if (base.isEmpty()) {
+            return null;
         }
+        int credit = Integer.parseInt(base);
+        for (KeyValue delta : creditDeltas(stub, userID)) {
+            credit += Integer.parseInt(delta.getStringValue());
+        }
+        return Math.max(credit, 0);
+    }
 
-        int newCredit = Integer.parseInt(oldCredit) + Integer.parseInt(changeValue);
-        if (newCredit < 0) {
-            stub.putStringState(userID + "-Credit", String.valueOf(0));
+    /**
+     * Initialize userID-Credit to 100 and drop the deltas left from before
+     */
+    private static void resetCredit(final ChaincodeStub stub, final String userID) {
+        for (KeyValue delta : creditDeltas(stub, userID)) {
+            stub.delState(delta.getKey());
         }
+        stub.putStringState(userID + "-Credit", "100");
+    }
 
-        stub.putStringState(userID + "-Credit", String.valueOf(newCredit));
-        return "ok";
+    private static List<KeyValue> creditDeltas(final ChaincodeStub stub, final String userID) {
+        List<KeyValue> deltas = new ArrayList<>();
+        try (QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(CREDIT, userID)) {
+            for (KeyValue delta : results) {
+                deltas.add(delta);
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException(e);
+        }
+        return deltas;
+    }
+
+    /**
+     * Parse and check a batch payload before anything is written
+     * @param payload JSON array of at most 10000 items
+     * @param arity number of fields of every item, 0 for plain strings
+     * @return items of the batch
+     */
+    private static JSONArray batchItems(final String payload, final int arity) {
+        JSONArray items;
+        try {
+            items = MeteringChaincodeStub.json(() -> JSONArray.parseArray(payload));
+        } catch (JSONException e) {
+            items = null;
+        }
+        if (items == null) {
+            throw reject(Message.BATCH_PAYLOAD_ERROR, payload);
+        }
+        if (items.size() > BATCH_LIMIT) {
+            throw reject(Message.BATCH_TOO_LARGE, items.size(), BATCH_LIMIT);
+        }
+        for (int i = 0; i < items.size(); i++) {
+            Object item = items.get(i);
+            boolean valid = arity == 0 ? item instanceof String
+                    : item instanceof JSONArray && ((JSONArray) item).size() == arity;
+            if (!valid) {
+                throw reject(Message.BATCH_ITEM_ERROR, i);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * User ID of a batch item, a blank ID would write the key "-Credit"
+     * @param index position of the item in the batch
+     */
+    private static String batchUserID(final String userID, final int index) {
+        if (userID == null || userID.trim().isEmpty()) {
+            throw reject(Message.USER_ID_BLANK, index);
+        }
+        return userID;
+    }
+
+    /**
+     * Results of a batch, rejected as a whole if no item succeeded
+     * @param results result or error code of every item
+     * @param succeeded number of items that succeeded
+     * @return JSON array of the results
+     */
+    private static String batchResults(final List<?> results, final int succeeded) {
+        String json = JSON.toJSONString(results);
+        if (succeeded == 0) {
+            throw reject(Message.BATCH_REJECTED, json);
+        }
+        return json;
+    }
 
+    private static String errorCode(final ChaincodeException e) {
+        return new String(e.getPayload(), StandardCharsets.UTF_8);
     }
 
     @Transaction(name = "InitTrans", intent = Transaction.TYPE.SUBMIT)
     public String initTrans(final Context ctx, final String discountRuleID, final String groupBuyingID) {
         ChaincodeStub stub = ctx.getStub();
-        String discountRuleString = stub.getStringState(discountRuleID);
-        if (discountRuleString.isEmpty()) {
-            String errorMessage = String.format(Message.RULE_NOT_EXIST.template(), discountRuleID);
-            return errorMessage;
-        }
-        JSONObject discountRule = JSONObject.parseObject(discountRuleString);
-
-        String groupBuyingString = stub.getStringState(groupBuyingID);
-        if (groupBuyingString.isEmpty()) {
-            String errorMessage = String.format(Message.GROUP_BUYING_NOT_EXIST.template(), groupBuyingID);
-            return errorMessage;
-        }
-        JSONObject groupBuying = JSONObject.parseObject(groupBuyingString);
-
-        if (groupBuying.getString("currentNum").equals(groupBuying.getString("groupNum"))) {
-            if(groupBuying.getString("discountRuleID").equals(discountRuleID)){
-                discountRule.put("orderNum", "0");
-                discountRule.put("orderIDs", "");
-                String payerIDs = groupBuying.getString("userID");
-                String payments = discountRule.getString("firstBuyerPrice");
-                int receivables = Integer.parseInt(discountRule.getString("firstBuyerPrice"));
-                for(int i =2;i<=Integer.parseInt(groupBuying.getString("groupNum"));i++){
-                    String participateBuyingString = stub.getStringState(groupBuyingID+"-"+String.valueOf(i));
-                    JSONObject participateBuying = JSONObject.parseObject(participateBuyingString);
-                    payerIDs += "/" + participateBuying.getString("userID");
-                    payments += "/" + discountRule.getString("otherBuyerPrice");
-                    receivables += Integer.parseInt(discountRule.getString("otherBuyerPrice"));
-                }
-                String sellerIDs = discountRule.getString("sellerID");
-                Map<String,String> map = new HashMap<>();
-                map.put("transState","0");   //0代表支付待完成 1代表支付已完成 -1代表违约
-                map.put("payerIDs", payerIDs);
-                map.put("payee",sellerIDs);
-                map.put("payments",payments);
-                map.put("receivables",String.valueOf(receivables));
-                //创建交易单
-                stub.putStringState(groupBuyingID+"-"+discountRuleID, JSON.toJSONString(map));
-                return "ok";
-                
-            }else{
-                String errorMessage = String.format(Message.Transaction_ERROR.template(), groupBuyingID, discountRuleID);
-                return errorMessage;
-            }
-        }else{
-            String errorMessage = String.format(Message.GROUP_BUYING_NOT_SUCCESS.template(), groupBuyingID);
-            return errorMessage;
+        DiscountRule discountRule = DiscountRule.fromBytes(stub.getState(discountRuleID));
+        if (discountRule == null) {
+            throw reject(Message.RULE_NOT_EXIST, discountRuleID);
         }
-        
 
+        GroupBuying groupBuying = GroupBuying.fromBytes(stub.getState(groupBuyingID));
+        if (groupBuying == null) {
+            throw reject(Message.GROUP_BUYING_NOT_EXIST, groupBuyingID);
+        }
+        if (!groupBuying.getDiscountRuleID().equals(discountRuleID)) {
+            throw reject(Message.Transaction_ERROR, groupBuyingID, discountRuleID);
+        }
+        //每个拼单只成团一次，重复成团会重置交易状态并重复计入统计
+        String transID = groupBuyingID+"-"+discountRuleID;
+        if (TradeTransaction.fromBytes(stub.getState(transID)) != null) {
+            throw reject(Message.Transaction_EXIST, transID);
+        }
+
+        int legacyNum = groupBuying.getCurrentNum();
+        //按参团顺序取剩余名额内的参团，超出名额的参团在成团时删除
+        int capacity = Math.max(groupBuying.getGroupNum() - legacyNum, 0);
+        List<Participation> participants = new ArrayList<>();
+        List<String> dropped = new ArrayList<>();
+        for (Map.Entry<String, Participation> join : joinOrder(stub, groupBuying).entrySet()) {
+            if (participants.size() < capacity) {
+                participants.add(join.getValue());
+            } else {
+                dropped.add(join.getKey());
+            }
+        }
+        if (legacyNum + participants.size() != groupBuying.getGroupNum()) {
+            throw reject(Message.GROUP_BUYING_NOT_SUCCESS, groupBuyingID);
+        }
+        for (String admissionID : dropped) {
+            stub.delState(participantKey(stub, groupBuyingID, admissionID));
+        }
+        int otherBuyerPrice = discountRule.getOtherBuyerPrice();
+        TradeTransaction transaction = new TradeTransaction();
+        transaction.setTransState(0);   //0代表支付待完成 1代表支付已完成 -1代表违约
+        transaction.getPayerIDs().add(groupBuying.getUserID());
+        transaction.getPayments().add(discountRule.getFirstBuyerPrice());
+        int receivables = discountRule.getFirstBuyerPrice();
+        //旧版计数方式加入的参与者（组合键方式之前创建的拼单）
+        for(int i =2;i<=legacyNum;i++){
+            Participation participateBuying = Participation.fromBytes(stub.getState(groupBuyingID+"-"+String.valueOf(i)));
+            transaction.getPayerIDs().add(participateBuying.getUserID());
+            transaction.getPayments().add(otherBuyerPrice);
+            receivables += otherBuyerPrice;
+        }
+        //组合键方式加入的参与者，由一次范围扫描取得
+        for (Participation participateBuying : participants) {
+            transaction.getPayerIDs().add(participateBuying.getUserID());
+            transaction.getPayments().add(otherBuyerPrice);
+            receivables += otherBuyerPrice;
+        }
+        transaction.setPayee(discountRule.getSellerID());
+        transaction.setReceivables(receivables);
+        //创建交易单
+        stub.putState(transID, transaction.toBytes());
+        //登记付款人的交易单索引
+        for (String payerID : new LinkedHashSet<>(transaction.getPayerIDs())) {
+            stub.putStringState(stub.createCompositeKey(PAYER_TRANS, payerID, transID).toString(), transID);
+        }
+        //卖家与规则统计各写一条本交易单的增量，不读写汇总值，成团交易之间不会冲突
+        SalesStats delta = new SalesStats();
+        delta.setGroups(1);
+        delta.setBuyers(transaction.getPayerIDs().size());
+        delta.setReceivables(receivables);
+        stub.putState(stub.createCompositeKey(STATS_DELTA, SELLER, discountRule.getSellerID(), transID).toString(), delta.toBytes());
+        stub.putState(stub.createCompositeKey(STATS_DELTA, RULE, discountRuleID, transID).toString(), delta.toBytes());
+        JSONObject event = event(ctx, Event.TransCreated);
+        event.put("transID", transID);
+        event.put("discountRuleID", discountRuleID);
+        event.put("groupBuyingID", groupBuyingID);
+        event.put("payee", transaction.getPayee());
+        event.put("payerIDs", transaction.getPayerIDs());
+        event.put("receivables", transaction.getReceivables());
+        event.put("transState", transaction.getTransState());
+        event.put("droppedAdmissionIDs", dropped);
+        return "ok";
     }
 
     @Transaction(name = "ChangeTrans", intent = Transaction.TYPE.SUBMIT)
     public String changeTrans(final Context ctx, final String transID, final String transState) {
         ChaincodeStub stub = ctx.getStub();
-        String transactionString = stub.getStringState(transID);
-        if (transactionString.isEmpty()) {
-            String errorMessage = String.format(Message.Transaction_NOT_EXIST.template(), transID);
-            return errorMessage;
-        }
-        JSONObject transaction = JSONObject.parseObject(transactionString);
-        transaction.put("transState", transState);
-        stub.putStringState(transID,JSON.toJSONString(transaction));
+        TradeTransaction transaction = TradeTransaction.fromBytes(stub.getState(transID));
+        if (transaction == null) {
+            throw reject(Message.Transaction_NOT_EXIST, transID);
+        }
+        transaction.setTransState(intArg(transState));
+        stub.putState(transID, transaction.toBytes());
+        JSONObject event = event(ctx, Event.TransChanged);
+        event.put("transID", transID);
+        event.put("transState", transaction.getTransState());
         return "ok";
     }
 
+    /**
+     * Adds an event to the transaction's GroupBuyingEvents payload
+     * @param ctx
+     * @param type
+     * @return the event, to be filled in by the caller
+     */
+    private static JSONObject event(final Context ctx, final Event type) {
+        JSONObject event = new JSONObject(true);
+        event.put("type", type.name());
+        if (ctx instanceof ContractContext) {
+            ((ContractContext) ctx).getEvents().add(event);
+        }
+        return event;
+    }
+
     @Transaction(name = "QueryTrans", intent = Transaction.TYPE.EVALUATE)
     public String queryTrans(final Context ctx, final String transID) {
         ChaincodeStub stub = ctx.getStub();
-        String transactionString = stub.getStringState(transID);
-        if (transactionString.isEmpty()) {
-            String errorMessage = String.format(Message.Transaction_NOT_EXIST.template(), transID);
-            return errorMessage;
+        TradeTransaction transaction = TradeTransaction.fromBytes(stub.getState(transID));
+        if (transaction == null) {
+            throw reject(Message.Transaction_NOT_EXIST, transID);
         }
-        JSONObject transaction = JSONObject.parseObject(transactionString);
         String state = "";
-        switch(transaction.getString("transState")){
-            case "0": state="支付待完成";break;
-            case "1": state="支付已完成";break;
-            case "-1": state="用户已违约";break;
+        switch(transaction.getTransState()){
+            case 0: state="支付待完成";break;
+            case 1: state="支付已完成";break;
+            case -1: state="用户已违约";break;
         }
         return "交易" + transID + "的交易状态为：" + state;
     }
@@ -465,10 +1485,9 @@ public final class Contract implements ContractInterface {
     @Transaction(name = "QueryCredit", intent = Transaction.TYPE.EVALUATE)
     public String queryCredit(final Context ctx, final String userID) {
         ChaincodeStub stub = ctx.getStub();
-        String value = stub.getStringState(userID + "-Credit");
-        if (value.isEmpty()) {
-            String errorMessage = String.format(Message.USER_NOT_EXISTING.template(), userID);
-            return errorMessage;
+        Integer value = credit(stub, userID);
+        if (value == null) {
+            throw reject(Message.USER_NOT_EXISTING, userID);
         }
         return "用户" + userID + "的信用分为：" + value;
     }
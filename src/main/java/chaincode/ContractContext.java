@@ -0,0 +1,44 @@
+package chaincode;
+import org.hyperledger.fabric.contract.Context;
+import com.alibaba.fastjson.JSONObject;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class: ContractContext
+ *
+ * Transaction context whose stub is a per-transaction state cache on top of a metering
+ * stub, plus the events the transaction emits. Contract starts the meter in
+ * beforeTransaction, then flushes the cache, sets the events and stops the meter in
+ * afterTransaction.
+ */
+public class ContractContext extends Context {
+    private final MeteringChaincodeStub meter;
+    private final List<JSONObject> events = new ArrayList<>();
+
+    public ContractContext(final ChaincodeStub stub) {
+        this(new MeteringChaincodeStub(stub));
+    }
+
+    private ContractContext(final MeteringChaincodeStub meter) {
+        super(new CachingChaincodeStub(meter));
+        this.meter = meter;
+    }
+
+    CachingChaincodeStub getCache() {
+        return (CachingChaincodeStub) stub;
+    }
+
+    MeteringChaincodeStub getMeter() {
+        return meter;
+    }
+
+    /**
+     * @return events of the transaction, in the order they were emitted
+     */
+    List<JSONObject> getEvents() {
+        return events;
+    }
+}
@@ -0,0 +1,119 @@
+package chaincode;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Class: ContractMetrics
+ *
+ * Per-function transaction metrics of this chaincode process: wall time, ledger calls,
+ * bytes read and written and JSON parse time of the transactions that returned, each kept
+ * in a Histogram, and the number of transactions that threw. Exposed by the
+ * GetMetrics transaction and logged as one JSON line per function every
+ * CHAINCODE_METRICS_LOG_SECONDS (default 60, 0 turns logging off).
+ */
+final class ContractMetrics {
+    private static final Logger LOGGER = Logger.getLogger(ContractMetrics.class.getName());
+    private static final long LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(logSeconds());
+    private static final ConcurrentMap<String, FunctionMetrics> FUNCTIONS = new ConcurrentHashMap<>();
+    private static final AtomicLong NEXT_LOG = new AtomicLong(System.nanoTime() + LOG_INTERVAL_NANOS);
+
+    private ContractMetrics() {
+    }
+
+    private static long logSeconds() {
+        String seconds = System.getenv("CHAINCODE_METRICS_LOG_SECONDS");
+        try {
+            return seconds == null ? 60L : Long.parseLong(seconds);
+        } catch (NumberFormatException e) {
+            return 60L;
+        }
+    }
+
+    /**
+     * Records one finished transaction
+     * @param function function name from the proposal
+     * @param latencyNanos wall time from beforeTransaction to afterTransaction
+     * @param meter ledger calls of the transaction
+     */
+    static void record(final String function, final long latencyNanos, final MeteringChaincodeStub meter) {
+        FunctionMetrics metrics = FUNCTIONS.computeIfAbsent(function == null ? "unknown" : function, f -> new FunctionMetrics());
+        metrics.latencyNanos.record(latencyNanos);
+        metrics.getStates.record(meter.getGetStates());
+        metrics.putStates.record(meter.getPutStates());
+        metrics.rangeQueries.record(meter.getRangeQueries());
+        metrics.bytesRead.record(meter.getBytesRead());
+        metrics.bytesWritten.record(meter.getBytesWritten());
+        metrics.jsonNanos.record(meter.getJsonNanos());
+        logIfDue();
+    }
+
+    /**
+     * Records one transaction that threw
+     * @param function function name from the proposal
+     */
+    static void recordFailure(final String function) {
+        FUNCTIONS.computeIfAbsent(function == null ? "unknown" : function, f -> new FunctionMetrics()).failed.incrementAndGet();
+        logIfDue();
+    }
+
+    /**
+     * @return metrics of every function seen so far, by function name
+     */
+    static JSONObject snapshot() {
+        JSONObject snapshot = new JSONObject(true);
+        for (Map.Entry<String, FunctionMetrics> entry : new TreeMap<>(FUNCTIONS).entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshot;
+    }
+
+    private static void logIfDue() {
+        if (LOG_INTERVAL_NANOS <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long due = NEXT_LOG.get();
+        //只有抢到本周期的线程输出日志
+        if (now - due < 0 || !NEXT_LOG.compareAndSet(due, now + LOG_INTERVAL_NANOS)) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : snapshot().entrySet()) {
+            JSONObject line = new JSONObject(true);
+            line.put("event", "chaincodeMetrics");
+            line.put("function", entry.getKey());
+            line.putAll((JSONObject) entry.getValue());
+            LOGGER.info(line.toJSONString());
+        }
+    }
+
+    private static final class FunctionMetrics {
+        private final Histogram latencyNanos = new Histogram();
+        private final Histogram getStates = new Histogram();
+        private final Histogram putStates = new Histogram();
+        private final Histogram rangeQueries = new Histogram();
+        private final Histogram bytesRead = new Histogram();
+        private final Histogram bytesWritten = new Histogram();
+        private final Histogram jsonNanos = new Histogram();
+        private final AtomicLong failed = new AtomicLong();
+
+        JSONObject snapshot() {
+            JSONObject snapshot = new JSONObject(true);
+            snapshot.put("latencyNanos", latencyNanos.snapshot());
+            snapshot.put("getStates", getStates.snapshot());
+            snapshot.put("putStates", putStates.snapshot());
+            snapshot.put("rangeQueries", rangeQueries.snapshot());
+            snapshot.put("bytesRead", bytesRead.snapshot());
+            snapshot.put("bytesWritten", bytesWritten.snapshot());
+            snapshot.put("jsonNanos", jsonNanos.snapshot());
+            snapshot.put("failed", failed.get());
+            return snapshot;
+        }
+    }
+}
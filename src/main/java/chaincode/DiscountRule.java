@@ -0,0 +1,102 @@
+package chaincode;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * Class: DiscountRule
+ *
+ * Terms of a discount rule, written once by InitRule. Open/close state and times are kept
+ * apart in RuleStatus so that lifecycle writes do not touch the terms buyers read.
+ */
+public final class DiscountRule {
+    private String sellerID;
+    private String goodID;
+    private int groupNum;
+    private int firstBuyerPrice;
+    private int otherBuyerPrice;
+
+    public String getSellerID() {
+        return sellerID;
+    }
+
+    public void setSellerID(final String sellerID) {
+        this.sellerID = sellerID;
+    }
+
+    public String getGoodID() {
+        return goodID;
+    }
+
+    public void setGoodID(final String goodID) {
+        this.goodID = goodID;
+    }
+
+    public int getGroupNum() {
+        return groupNum;
+    }
+
+    public void setGroupNum(final int groupNum) {
+        this.groupNum = groupNum;
+    }
+
+    public int getFirstBuyerPrice() {
+        return firstBuyerPrice;
+    }
+
+    public void setFirstBuyerPrice(final int firstBuyerPrice) {
+        this.firstBuyerPrice = firstBuyerPrice;
+    }
+
+    public int getOtherBuyerPrice() {
+        return otherBuyerPrice;
+    }
+
+    public void setOtherBuyerPrice(final int otherBuyerPrice) {
+        this.otherBuyerPrice = otherBuyerPrice;
+    }
+
+    public byte[] toBytes() {
+        return RecordCodec.writer(RecordCodec.RULE_DEFINITION)
+                .putString(sellerID)
+                .putString(goodID)
+                .putInt(groupNum)
+                .putInt(firstBuyerPrice)
+                .putInt(otherBuyerPrice)
+                .toBytes();
+    }
+
+    /**
+     * @param bytes stored value, binary or JSON, with or without the status fields of
+     *              records written before the split
+     * @return the rule, or null if the key is not set or holds another record
+     */
+    public static DiscountRule fromBytes(final byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        DiscountRule rule = new DiscountRule();
+        if (RecordCodec.isJson(bytes)) {
+            JSONObject json = RecordCodec.parseJson(bytes, "sellerID", "firstBuyerPrice", "otherBuyerPrice");
+            if (json == null) {
+                return null;
+            }
+            rule.sellerID = json.getString("sellerID");
+            rule.goodID = json.getString("goodID");
+            rule.groupNum = json.getIntValue("groupNum");
+            rule.firstBuyerPrice = json.getIntValue("firstBuyerPrice");
+            rule.otherBuyerPrice = json.getIntValue("otherBuyerPrice");
+            return rule;
+        }
+        //拆分前的二进制记录，条款之后的状态字段忽略
+        byte type = RecordCodec.isType(bytes, RecordCodec.DISCOUNT_RULE) ? RecordCodec.DISCOUNT_RULE : RecordCodec.RULE_DEFINITION;
+        if (!RecordCodec.isType(bytes, type)) {
+            return null;
+        }
+        RecordCodec.Reader reader = RecordCodec.reader(bytes, type);
+        rule.sellerID = reader.getString();
+        rule.goodID = reader.getString();
+        rule.groupNum = reader.getInt();
+        rule.firstBuyerPrice = reader.getInt();
+        rule.otherBuyerPrice = reader.getInt();
+        return rule;
+    }
+}
@@ -0,0 +1,132 @@
+package chaincode;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * Class: GroupBuying
+ */
+public final class GroupBuying {
+    private String userID;
+    private String sellerID;
+    private String groupBuyingID;
+    private long initTime;
+    private int groupNum;
+    private String goodID;
+    private int currentNum;     //发起人及旧版计数方式加入的参与者
+    private String discountRuleID;
+
+    public String getUserID() {
+        return userID;
+    }
+
+    public void setUserID(final String userID) {
+        this.userID = userID;
+    }
+
+    public String getSellerID() {
+        return sellerID;
+    }
+
+    public void setSellerID(final String sellerID) {
+        this.sellerID = sellerID;
+    }
+
+    public String getGroupBuyingID() {
+        return groupBuyingID;
+    }
+
+    public void setGroupBuyingID(final String groupBuyingID) {
+        this.groupBuyingID = groupBuyingID;
+    }
+
+    public long getInitTime() {
+        return initTime;
+    }
+
+    public void setInitTime(final long initTime) {
+        this.initTime = initTime;
+    }
+
+    public int getGroupNum() {
+        return groupNum;
+    }
+
+    public void setGroupNum(final int groupNum) {
+        this.groupNum = groupNum;
+    }
+
+    public String getGoodID() {
+        return goodID;
+    }
+
+    public void setGoodID(final String goodID) {
+        this.goodID = goodID;
+    }
+
+    public int getCurrentNum() {
+        return currentNum;
+    }
+
+    public void setCurrentNum(final int currentNum) {
+        this.currentNum = currentNum;
+    }
+
+    public String getDiscountRuleID() {
+        return discountRuleID;
+    }
+
+    public void setDiscountRuleID(final String discountRuleID) {
+        this.discountRuleID = discountRuleID;
+    }
+
+    public byte[] toBytes() {
+        return RecordCodec.writer(RecordCodec.GROUP_BUYING)
+                .putString(userID)
+                .putString(sellerID)
+                .putString(groupBuyingID)
+                .putLong(initTime)
+                .putInt(groupNum)
+                .putString(goodID)
+                .putInt(currentNum)
+                .putString(discountRuleID)
+                .toBytes();
+    }
+
+    /**
+     * @param bytes stored value, binary or JSON
+     * @return the group buying, or null if the key is not set or holds another record
+     */
+    public static GroupBuying fromBytes(final byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        GroupBuying groupBuying = new GroupBuying();
+        if (RecordCodec.isJson(bytes)) {
+            JSONObject json = RecordCodec.parseJson(bytes, "groupBuyingID", "discountRuleID", "groupNum");
+            if (json == null) {
+                return null;
+            }
+            groupBuying.userID = json.getString("userID");
+            groupBuying.sellerID = json.getString("sellerID");
+            groupBuying.groupBuyingID = json.getString("groupBuyingID");
+            groupBuying.initTime = json.getLongValue("initTime");
+            groupBuying.groupNum = json.getIntValue("groupNum");
+            groupBuying.goodID = json.getString("goodID");
+            groupBuying.currentNum = json.getIntValue("currentNum");
+            groupBuying.discountRuleID = json.getString("discountRuleID");
+            return groupBuying;
+        }
+        if (!RecordCodec.isType(bytes, RecordCodec.GROUP_BUYING)) {
+            return null;
+        }
+        RecordCodec.Reader reader = RecordCodec.reader(bytes, RecordCodec.GROUP_BUYING);
+        groupBuying.userID = reader.getString();
+        groupBuying.sellerID = reader.getString();
+        groupBuying.groupBuyingID = reader.getString();
+        groupBuying.initTime = reader.getLong();
+        groupBuying.groupNum = reader.getInt();
+        groupBuying.goodID = reader.getString();
+        groupBuying.currentNum = reader.getInt();
+        groupBuying.discountRuleID = reader.getString();
+        return groupBuying;
+    }
+}
@@ -0,0 +1,66 @@
+package chaincode;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class: Histogram
+ *
+ * Lock-free histogram of non-negative longs with power-of-two buckets: bucket 0 holds 0
+ * and bucket i holds [2^(i-1), 2^i). Recording is a few atomic increments, so concurrent
+ * transactions never block each other. Percentiles are reported as the upper bound of
+ * their bucket, capped at the maximum, so they are accurate within a factor of two.
+ */
+final class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(final long value) {
+        long v = Math.max(value, 0L);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     */
+    long percentile(final double quantile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return i == 0 ? 0L : Math.min((1L << i) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return count, mean, p50, p90, p99 and max
+     */
+    JSONObject snapshot() {
+        long total = count.get();
+        JSONObject snapshot = new JSONObject(true);
+        snapshot.put("count", total);
+        snapshot.put("mean", total == 0 ? 0L : sum.get() / total);
+        snapshot.put("p50", percentile(0.50));
+        snapshot.put("p90", percentile(0.90));
+        snapshot.put("p99", percentile(0.99));
+        snapshot.put("max", max.get());
+        return snapshot;
+    }
+}
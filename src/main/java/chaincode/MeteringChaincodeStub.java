@@ -0,0 +1,257 @@
+package chaincode;
+import org.hyperledger.fabric.protos.peer.QueryResponseMetadata;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+/**
+ * Class: MeteringChaincodeStub
+ *
+ * Counts the ledger calls of one transaction that reach the peer and the bytes they move.
+ * It sits below the state cache, so cache hits and coalesced writes are not counted.
+ * JSON parse time is charged to the transaction running on the current thread, see json.
+ */
+final class MeteringChaincodeStub extends ForwardingChaincodeStub {
+    //线程只弱引用当前交易：ContractRouter 下抛出异常的交易不会调用 stop，不能让线程池线程一直持有它的桩
+    private static final ThreadLocal<Running> CURRENT = new ThreadLocal<>();
+
+    private long startNanos;
+    private boolean started;
+    private boolean recorded;
+    private int getStates;
+    private int putStates;
+    private int rangeQueries;
+    private long bytesRead;
+    private long bytesWritten;
+    private long jsonNanos;
+
+    MeteringChaincodeStub(final ChaincodeStub delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Starts the wall clock and makes this the transaction of the current thread. A
+     * transaction still current on this thread threw without reaching stop, it is
+     * recorded as failed.
+     */
+    void start() {
+        Running abandoned = CURRENT.get();
+        if (abandoned != null) {
+            MeteringChaincodeStub meter = abandoned.meter.get();
+            if (meter != null) {
+                meter.fail();
+            } else {
+                CURRENT.remove();
+                ContractMetrics.recordFailure(abandoned.function);
+            }
+        }
+        startNanos = System.nanoTime();
+        started = true;
+        CURRENT.set(new Running(getFunction(), this));
+    }
+
+    /**
+     * Stops the wall clock and records the transaction under its function name
+     */
+    void stop() {
+        CURRENT.remove();
+        if (!recorded) {
+            recorded = true;
+            ContractMetrics.record(getFunction(), System.nanoTime() - startNanos, this);
+        }
+    }
+
+    /**
+     * Records a started transaction that threw instead of reaching stop as failed and
+     * releases the current thread
+     */
+    void fail() {
+        if (current() == this) {
+            CURRENT.remove();
+        }
+        if (started && !recorded) {
+            recorded = true;
+            ContractMetrics.recordFailure(getFunction());
+        }
+    }
+
+    /**
+     * Runs a JSON parse and charges its time to the transaction of the current thread, if any
+     */
+    static <T> T json(final Supplier<T> parse) {
+        MeteringChaincodeStub current = current();
+        if (current == null) {
+            return parse.get();
+        }
+        long start = System.nanoTime();
+        try {
+            return parse.get();
+        } finally {
+            current.jsonNanos += System.nanoTime() - start;
+        }
+    }
+
+    private static MeteringChaincodeStub current() {
+        Running running = CURRENT.get();
+        return running == null ? null : running.meter.get();
+    }
+
+    /**
+     * Transaction running on a thread, its function name outlives the meter
+     */
+    private static final class Running {
+        private final String function;
+        private final WeakReference<MeteringChaincodeStub> meter;
+
+        private Running(final String function, final MeteringChaincodeStub meter) {
+            this.function = function;
+            this.meter = new WeakReference<>(meter);
+        }
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        byte[] value = delegate.getState(key);
+        getStates++;
+        bytesRead += value == null ? 0 : value.length;
+        return value;
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        putStates++;
+        bytesWritten += value == null ? 0 : value.length;
+        delegate.putState(key, value);
+    }
+
+    @Override
+    public void delState(final String key) {
+        putStates++;
+        delegate.delState(key);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        return metered(delegate.getStateByRange(startKey, endKey));
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(final String startKey, final String endKey,
+                                                                                   final int pageSize, final String bookmark) {
+        return metered(delegate.getStateByRangeWithPagination(startKey, endKey, pageSize, bookmark));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+        return metered(delegate.getStateByPartialCompositeKey(compositeKey));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String objectType, final String... attributes) {
+        return metered(delegate.getStateByPartialCompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        return metered(delegate.getStateByPartialCompositeKey(compositeKey));
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(final CompositeKey compositeKey,
+                                                                                                 final int pageSize, final String bookmark) {
+        return metered(delegate.getStateByPartialCompositeKeyWithPagination(compositeKey, pageSize, bookmark));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+        return metered(delegate.getQueryResult(query));
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(final String query, final int pageSize,
+                                                                                  final String bookmark) {
+        return metered(delegate.getQueryResultWithPagination(query, pageSize, bookmark));
+    }
+
+    private MeteredResults metered(final QueryResultsIterator<KeyValue> results) {
+        rangeQueries++;
+        return new MeteredResults(results, null);
+    }
+
+    private MeteredResults metered(final QueryResultsIteratorWithMetadata<KeyValue> results) {
+        rangeQueries++;
+        return new MeteredResults(results, results);
+    }
+
+    int getGetStates() {
+        return getStates;
+    }
+
+    int getPutStates() {
+        return putStates;
+    }
+
+    int getRangeQueries() {
+        return rangeQueries;
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    long getJsonNanos() {
+        return jsonNanos;
+    }
+
+    /**
+     * Range results that add the size of every value handed out to bytesRead
+     */
+    private final class MeteredResults implements QueryResultsIterator<KeyValue>, QueryResultsIteratorWithMetadata<KeyValue> {
+        private final Iterable<KeyValue> results;
+        private final QueryResultsIteratorWithMetadata<KeyValue> withMetadata;
+
+        MeteredResults(final Iterable<KeyValue> results, final QueryResultsIteratorWithMetadata<KeyValue> withMetadata) {
+            this.results = results;
+            this.withMetadata = withMetadata;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            Iterator<KeyValue> iterator = results.iterator();
+            return new Iterator<KeyValue>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public KeyValue next() {
+                    KeyValue kv = iterator.next();
+                    byte[] value = kv.getValue();
+                    bytesRead += value == null ? 0 : value.length;
+                    return kv;
+                }
+            };
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return withMetadata == null ? null : withMetadata.getMetadata();
+        }
+
+        @Override
+        public void close() throws Exception {
+            ((AutoCloseable) results).close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package chaincode;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * Class: Participation
+ */
+public final class Participation {
+    private String userID;
+    private long participateTime;
+    private String groupBuyingID;
+
+    public String getUserID() {
+        return userID;
+    }
+
+    public void setUserID(final String userID) {
+        this.userID = userID;
+    }
+
+    public long getParticipateTime() {
+        return participateTime;
+    }
+
+    public void setParticipateTime(final long participateTime) {
+        this.participateTime = participateTime;
+    }
+
+    public String getGroupBuyingID() {
+        return groupBuyingID;
+    }
+
+    public void setGroupBuyingID(final String groupBuyingID) {
+        this.groupBuyingID = groupBuyingID;
+    }
+
+    public byte[] toBytes() {
+        return RecordCodec.writer(RecordCodec.PARTICIPATION)
+                .putString(userID)
+                .putLong(participateTime)
+                .putString(groupBuyingID)
+                .toBytes();
+    }
+
+    /**
+     * @param bytes stored value, binary or JSON
+     * @return the participation, or null if the key is not set or holds another record
+     */
+    public static Participation fromBytes(final byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        Participation participation = new Participation();
+        if (RecordCodec.isJson(bytes)) {
+            JSONObject json = RecordCodec.parseJson(bytes, "userID", "participateTime", "groupBuyingID");
+            if (json == null) {
+                return null;
+            }
+            participation.userID = json.getString("userID");
+            participation.participateTime = json.getLongValue("participateTime");
+            participation.groupBuyingID = json.getString("groupBuyingID");
+            return participation;
+        }
+        if (!RecordCodec.isType(bytes, RecordCodec.PARTICIPATION)) {
+            return null;
+        }
+        RecordCodec.Reader reader = RecordCodec.reader(bytes, RecordCodec.PARTICIPATION);
+        participation.userID = reader.getString();
+        participation.participateTime = reader.getLong();
+        participation.groupBuyingID = reader.getString();
+        return participation;
+    }
+}
@@ -0,0 +1,156 @@
+package chaincode;
+import com.alibaba.fastjson.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Class: RecordCodec
+ *
+ * Versioned binary encoding of state records: one format version byte, one record type
+ * byte, then the fields in declaration order. Integers are zigzag varints and strings
+ * are length-prefixed UTF-8. Records written before the binary format are JSON objects
+ * and are still decoded, so existing ledgers migrate as records are rewritten.
+ */
+final class RecordCodec {
+    static final byte FORMAT_V1 = 1;
+
+    static final byte DISCOUNT_RULE = 1;
+    static final byte GROUP_BUYING = 2;
+    static final byte PARTICIPATION = 3;
+    static final byte TRADE_TRANSACTION = 4;
+    static final byte RULE_DEFINITION = 5;
+    static final byte RULE_STATUS = 6;
+    static final byte SALES_STATS = 7;
+
+    private RecordCodec() {
+    }
+
+    /**
+     * Whether the stored value is a JSON record from before the binary format
+     */
+    static boolean isJson(final byte[] bytes) {
+        return bytes[0] == '{';
+    }
+
+    /**
+     * Record type of a binary value
+     */
+    static byte type(final byte[] bytes) {
+        return bytes[1];
+    }
+
+    /**
+     * Whether the stored value is a binary record of the given type, a key may hold a
+     * record of another type when a caller passes the wrong ID
+     */
+    static boolean isType(final byte[] bytes, final byte type) {
+        return !isJson(bytes) && bytes.length > 1 && type(bytes) == type;
+    }
+
+    /**
+     * @param required fields every JSON record of the type has; a JSON record of another
+     *                 type lacks at least one of them
+     * @return the record, or null if it lacks a required field
+     */
+    static JSONObject parseJson(final byte[] bytes, final String... required) {
+        JSONObject json = MeteringChaincodeStub.json(() -> JSONObject.parseObject(new String(bytes, StandardCharsets.UTF_8)));
+        for (String field : required) {
+            if (json.get(field) == null) {
+                return null;
+            }
+        }
+        return json;
+    }
+
+    static Writer writer(final byte type) {
+        return new Writer(type);
+    }
+
+    static Reader reader(final byte[] bytes, final byte type) {
+        if (bytes[0] != FORMAT_V1) {
+            throw new IllegalArgumentException("unknown record format " + bytes[0]);
+        }
+        if (bytes[1] != type) {
+            throw new IllegalArgumentException("record type " + bytes[1] + " is not " + type);
+        }
+        return new Reader(bytes, 2);
+    }
+
+    static final class Writer {
+        private byte[] buf = new byte[64];
+        private int pos;
+
+        private Writer(final byte type) {
+            buf[pos++] = FORMAT_V1;
+            buf[pos++] = type;
+        }
+
+        private void ensure(final int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+
+        Writer putLong(final long value) {
+            ensure(10);
+            long v = (value << 1) ^ (value >> 63);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+            return this;
+        }
+
+        Writer putInt(final int value) {
+            return putLong(value);
+        }
+
+        Writer putString(final String value) {
+            byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            putLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+            return this;
+        }
+
+        byte[] toBytes() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    static final class Reader {
+        private final byte[] bytes;
+        private int pos;
+
+        private Reader(final byte[] bytes, final int pos) {
+            this.bytes = bytes;
+            this.pos = pos;
+        }
+
+        long getLong() {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        int getInt() {
+            return (int) getLong();
+        }
+
+        String getString() {
+            int length = getInt();
+            String value = new String(bytes, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package chaincode;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * Class: RuleStatus
+ *
+ * Open/close state and times of a discount rule, stored under ruleStatus~discountRuleID
+ * and rewritten by Open and Close. Rules written before the split keep these fields in
+ * the rule record itself, see fromRule.
+ */
+public final class RuleStatus {
+    private int ruleState;      //0为关闭状态 1为开放状态
+    private long duration;
+    private long startTime;
+    private long endTime;
+
+    public int getRuleState() {
+        return ruleState;
+    }
+
+    public void setRuleState(final int ruleState) {
+        this.ruleState = ruleState;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(final long duration) {
+        this.duration = duration;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(final long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(final long endTime) {
+        this.endTime = endTime;
+    }
+
+    public byte[] toBytes() {
+        return RecordCodec.writer(RecordCodec.RULE_STATUS)
+                .putInt(ruleState)
+                .putLong(duration)
+                .putLong(startTime)
+                .putLong(endTime)
+                .toBytes();
+    }
+
+    /**
+     * @param bytes stored status value
+     * @return the status, or null if the key is not set or holds another record
+     */
+    public static RuleStatus fromBytes(final byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        RuleStatus status = new RuleStatus();
+        if (!RecordCodec.isType(bytes, RecordCodec.RULE_STATUS)) {
+            return null;
+        }
+        RecordCodec.Reader reader = RecordCodec.reader(bytes, RecordCodec.RULE_STATUS);
+        status.ruleState = reader.getInt();
+        status.duration = reader.getLong();
+        status.startTime = reader.getLong();
+        status.endTime = reader.getLong();
+        return status;
+    }
+
+    /**
+     * Status kept in a rule record written before the split
+     * @param bytes stored rule value
+     * @return the status, closed if the record holds none, or null if the key is not set
+     * or holds another record
+     */
+    public static RuleStatus fromRule(final byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        RuleStatus status = new RuleStatus();
+        if (RecordCodec.isJson(bytes)) {
+            JSONObject json = RecordCodec.parseJson(bytes, "sellerID", "firstBuyerPrice", "otherBuyerPrice");
+            if (json == null) {
+                return null;
+            }
+            status.ruleState = json.getIntValue("ruleState");
+            status.duration = json.getLongValue("duration");
+            status.startTime = json.getLongValue("startTime");
+            status.endTime = json.getLongValue("endTime");
+        } else if (!RecordCodec.isType(bytes, RecordCodec.RULE_DEFINITION) && !RecordCodec.isType(bytes, RecordCodec.DISCOUNT_RULE)) {
+            return null;
+        } else if (RecordCodec.type(bytes) == RecordCodec.DISCOUNT_RULE) {
+            RecordCodec.Reader reader = RecordCodec.reader(bytes, RecordCodec.DISCOUNT_RULE);
+            reader.getString();
+            reader.getString();
+            reader.getInt();
+            reader.getInt();
+            reader.getInt();
+            status.ruleState = reader.getInt();
+            status.duration = reader.getLong();
+            status.startTime = reader.getLong();
+            status.endTime = reader.getLong();
+        }
+        return status;
+    }
+}
@@ -0,0 +1,71 @@
+package chaincode;
+
+/**
+ * Class: SalesStats
+ *
+ * Completed groups, buyers and receivables of a seller or a rule. InitTrans writes one
+ * delta per settled group, RollupStats adds the deltas into the rolled-up total.
+ */
+public final class SalesStats {
+    private long groups;
+    private long buyers;
+    private long receivables;
+
+    public long getGroups() {
+        return groups;
+    }
+
+    public void setGroups(final long groups) {
+        this.groups = groups;
+    }
+
+    public long getBuyers() {
+        return buyers;
+    }
+
+    public void setBuyers(final long buyers) {
+        this.buyers = buyers;
+    }
+
+    public long getReceivables() {
+        return receivables;
+    }
+
+    public void setReceivables(final long receivables) {
+        this.receivables = receivables;
+    }
+
+    /**
+     * Adds another total or delta to this one
+     */
+    public SalesStats add(final SalesStats other) {
+        groups += other.groups;
+        buyers += other.buyers;
+        receivables += other.receivables;
+        return this;
+    }
+
+    public byte[] toBytes() {
+        return RecordCodec.writer(RecordCodec.SALES_STATS)
+                .putLong(groups)
+                .putLong(buyers)
+                .putLong(receivables)
+                .toBytes();
+    }
+
+    /**
+     * @param bytes stored value
+     * @return the stats, all zero if the key is not set
+     */
+    public static SalesStats fromBytes(final byte[] bytes) {
+        SalesStats stats = new SalesStats();
+        if (bytes == null || bytes.length == 0) {
+            return stats;
+        }
+        RecordCodec.Reader reader = RecordCodec.reader(bytes, RecordCodec.SALES_STATS);
+        stats.groups = reader.getLong();
+        stats.buyers = reader.getLong();
+        stats.receivables = reader.getLong();
+        return stats;
+    }
+}
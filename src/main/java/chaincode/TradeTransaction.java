@@ -0,0 +1,113 @@
+package chaincode;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class: TradeTransaction
+ */
+public final class TradeTransaction {
+    private int transState;     //0代表支付待完成 1代表支付已完成 -1代表违约
+    private List<String> payerIDs = new ArrayList<>();
+    private String payee;
+    private List<Integer> payments = new ArrayList<>();
+    private int receivables;
+
+    public int getTransState() {
+        return transState;
+    }
+
+    public void setTransState(final int transState) {
+        this.transState = transState;
+    }
+
+    public List<String> getPayerIDs() {
+        return payerIDs;
+    }
+
+    public void setPayerIDs(final List<String> payerIDs) {
+        this.payerIDs = payerIDs;
+    }
+
+    public String getPayee() {
+        return payee;
+    }
+
+    public void setPayee(final String payee) {
+        this.payee = payee;
+    }
+
+    public List<Integer> getPayments() {
+        return payments;
+    }
+
+    public void setPayments(final List<Integer> payments) {
+        this.payments = payments;
+    }
+
+    public int getReceivables() {
+        return receivables;
+    }
+
+    public void setReceivables(final int receivables) {
+        this.receivables = receivables;
+    }
+
+    public byte[] toBytes() {
+        RecordCodec.Writer writer = RecordCodec.writer(RecordCodec.TRADE_TRANSACTION)
+                .putInt(transState)
+                .putInt(payerIDs.size());
+        for (String payerID : payerIDs) {
+            writer.putString(payerID);
+        }
+        writer.putString(payee).putInt(payments.size());
+        for (int payment : payments) {
+            writer.putInt(payment);
+        }
+        return writer.putInt(receivables).toBytes();
+    }
+
+    /**
+     * @param bytes stored value, binary or JSON
+     * @return the transaction, or null if the key is not set or holds another record
+     */
+    public static TradeTransaction fromBytes(final byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        TradeTransaction transaction = new TradeTransaction();
+        if (RecordCodec.isJson(bytes)) {
+            //旧版交易单中付款人与金额以"/"拼接
+            JSONObject json = RecordCodec.parseJson(bytes, "payerIDs", "payee", "payments");
+            if (json == null) {
+                return null;
+            }
+            transaction.transState = json.getIntValue("transState");
+            transaction.payerIDs = new ArrayList<>(Arrays.asList(json.getString("payerIDs").split("/")));
+            transaction.payee = json.getString("payee");
+            for (String payment : json.getString("payments").split("/")) {
+                transaction.payments.add(Integer.parseInt(payment));
+            }
+            transaction.receivables = json.getIntValue("receivables");
+            return transaction;
+        }
+        if (!RecordCodec.isType(bytes, RecordCodec.TRADE_TRANSACTION)) {
+            return null;
+        }
+        RecordCodec.Reader reader = RecordCodec.reader(bytes, RecordCodec.TRADE_TRANSACTION);
+        transaction.transState = reader.getInt();
+        int payerNum = reader.getInt();
+        for (int i = 0; i < payerNum; i++) {
+            transaction.payerIDs.add(reader.getString());
+        }
+        transaction.payee = reader.getString();
+        int paymentNum = reader.getInt();
+        for (int i = 0; i < paymentNum; i++) {
+            transaction.payments.add(reader.getInt());
+        }
+        transaction.receivables = reader.getInt();
+        return transaction;
+    }
+}
@@ -0,0 +1,18 @@
+package chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Interface: TransactionClock
+ *
+ * Time source of the contract. Every endorser of a transaction has to see the same time,
+ * so the default reads the proposal's timestamp rather than the peer's clock.
+ */
+@FunctionalInterface
+interface TransactionClock {
+    TransactionClock TX_TIMESTAMP = stub -> stub.getTxTimestamp().toEpochMilli();
+
+    /**
+     * @return milliseconds since the epoch for the transaction of this stub
+     */
+    long currentTimeMillis(ChaincodeStub stub);
+}
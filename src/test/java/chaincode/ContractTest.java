@@ -0,0 +1,560 @@
+package chaincode;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Class: ContractTest
+ *
+ * Runs Contract against the in-memory stub with a clock the test sets, covering rule
+ * expiry, admission order of joins, credit deltas, batches, record decoding, sales stats,
+ * export and import, paginated range queries and the rich queries answered by MangoQuery.
+ */
+class ContractTest {
+    private static final long HOUR = 3600 * 1000L;
+    //Open 的时长参数乘以 3600 毫秒，1000 即一小时
+    private static final String ONE_HOUR = "1000";
+    private static final String TEN_HOURS = "10000";
+
+    private long now = ContractDriver.START.toEpochMilli();
+    private final Contract contract = new Contract(stub -> now);
+    private final ContractDriver driver = new ContractDriver(new InMemoryChaincodeStub(), contract);
+
+    @Test
+    void joinsAreRejectedOnceTheRuleHasTimedOut() {
+        openRule("seller", "rule", ONE_HOUR);
+        invoke(ctx -> contract.initCredit(ctx, "buyer0"));
+        invoke(ctx -> contract.initCredit(ctx, "buyer1"));
+        invoke(ctx -> contract.initGroup(ctx, "buyer0", "group0", "rule"));
+
+        now += HOUR + 1;
+
+        assertThat(rejection(ctx -> contract.participate(ctx, "buyer1", "group0"))).isEqualTo("RULE_TIMEOUT");
+        assertThat(rejection(ctx -> contract.initGroup(ctx, "buyer1", "group1", "rule"))).isEqualTo("RULE_TIMEOUT");
+        assertThat(rejection(ctx -> contract.close(ctx, "rule"))).isEqualTo("RULE_TIMEOUT");
+    }
+
+    @Test
+    void joinsAreRejectedWhenTheRuleOfTheGroupNoLongerExists() {
+        openRule("seller", "rule", ONE_HOUR);
+        invoke(ctx -> contract.initCredit(ctx, "buyer0"));
+        invoke(ctx -> contract.initCredit(ctx, "buyer1"));
+        invoke(ctx -> contract.initGroup(ctx, "buyer0", "group0", "rule"));
+        invoke(ctx -> {
+            ctx.getStub().delState("rule");
+            ctx.getStub().delState(ctx.getStub().createCompositeKey("ruleStatus", "rule").toString());
+            return "ok";
+        });
+
+        assertThat(rejection(ctx -> contract.participate(ctx, "buyer1", "group0"))).isEqualTo("DISCOUNTRULE_NOT_EXISTING");
+    }
+
+    @Test
+    void sweepExpiredClosesOnlyRulesPastTheirEndTime() {
+        openRule("seller", "expired", ONE_HOUR);
+        openRule("seller", "open", TEN_HOURS);
+
+        now += 2 * HOUR;
+        JSONObject page = JSON.parseObject(invoke(ctx -> contract.sweepExpired(ctx, "10", "")));
+
+        assertThat(ruleIDs(page)).containsExactly("expired");
+        assertThat(page.getString("bookmark")).isEmpty();
+        assertThat(invoke(ctx -> contract.queryState(ctx, "expired"))).contains("关闭");
+        assertThat(invoke(ctx -> contract.queryState(ctx, "open"))).contains("开放");
+        //已关闭的规则可以重新开放
+        assertThat(invoke(ctx -> contract.open(ctx, "expired", ONE_HOUR))).isEqualTo("ok");
+    }
+
+    @Test
+    void sweepExpiredClosesRulesOpenedBeforeTheExpiryIndexOnceReindexed() {
+        putLegacy("legacyRule", "{\"sellerID\":\"seller\",\"goodID\":\"good\",\"groupNum\":\"2\",\"firstBuyerPrice\":\"100\","
+                + "\"otherBuyerPrice\":\"80\",\"ruleState\":\"1\",\"duration\":\"3600000\",\"startTime\":\"" + now
+                + "\",\"endTime\":\"" + (now + HOUR) + "\"}");
+
+        now += 2 * HOUR;
+        JSONObject before = JSON.parseObject(invoke(ctx -> contract.sweepExpired(ctx, "10", "")));
+        invoke(ctx -> contract.reindexState(ctx, "10", ""));
+        JSONObject after = JSON.parseObject(invoke(ctx -> contract.sweepExpired(ctx, "10", "")));
+
+        assertThat(ruleIDs(before)).isEmpty();
+        assertThat(ruleIDs(after)).containsExactly("legacyRule");
+        assertThat(invoke(ctx -> contract.queryState(ctx, "legacyRule"))).contains("关闭");
+    }
+
+    @Test
+    void sweepExpiredContinuesFromItsBookmark() {
+        for (int i = 0; i < 3; i++) {
+            openRule("seller", "rule" + i, ONE_HOUR);
+        }
+
+        now += 2 * HOUR;
+        JSONObject first = JSON.parseObject(invoke(ctx -> contract.sweepExpired(ctx, "2", "")));
+        String bookmark = first.getString("bookmark");
+        JSONObject second = JSON.parseObject(invoke(ctx -> contract.sweepExpired(ctx, "2", bookmark)));
+
+        assertThat(ruleIDs(first)).containsExactly("rule0", "rule1");
+        assertThat(bookmark).isNotEmpty();
+        assertThat(ruleIDs(second)).containsExactly("rule2");
+        assertThat(second.getString("bookmark")).isEmpty();
+    }
+
+    @Test
+    void sweepExpiredRejectsBookmarksOutsideTheExpiryIndex() {
+        openRule("seller", "rule", ONE_HOUR);
+        invoke(ctx -> contract.initCredit(ctx, "buyer0"));
+
+        now += 2 * HOUR;
+
+        assertThat(rejection(ctx -> contract.sweepExpired(ctx, "10", "buyer0-Credit"))).isEqualTo("BOOKMARK_ERROR");
+        assertThat(rejection(ctx -> contract.sweepExpired(ctx, "0", ""))).isEqualTo("PAGE_SIZE_ERROR");
+        assertThat(invoke(ctx -> contract.queryCredit(ctx, "buyer0"))).contains("100");
+    }
+
+    @Test
+    void queryGroupsByRulePagesThroughEveryGroup() {
+        driver.openRuleWithOrders("rule", 2, 5);
+
+        List<String> groupBuyingIDs = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String bookmark = "";
+        do {
+            String from = bookmark;
+            JSONObject page = JSON.parseObject(invoke(ctx -> contract.queryGroupsByRule(ctx, "rule", "2", from)));
+            JSONArray records = page.getJSONArray("records");
+            for (int i = 0; i < records.size(); i++) {
+                groupBuyingIDs.add(records.getJSONObject(i).getString("groupBuyingID"));
+            }
+            pageSizes.add(records.size());
+            bookmark = page.getString("bookmark");
+        } while (!bookmark.isEmpty());
+
+        assertThat(pageSizes).containsExactly(2, 2, 1);
+        assertThat(groupBuyingIDs).containsExactly("group0", "group1", "group2", "group3", "group4");
+    }
+
+    @Test
+    void queryTransByPayerPagesThroughTheTransactionsOfOnePayer() {
+        driver.openRuleWithOrders("rule", 2, 3);
+        for (int i = 0; i < 3; i++) {
+            String groupBuyingID = "group" + i;
+            invoke(ctx -> contract.initTrans(ctx, "rule", groupBuyingID));
+        }
+
+        JSONObject first = JSON.parseObject(invoke(ctx -> contract.queryTransByPayer(ctx, "buyer1", "2", "")));
+        String bookmark = first.getString("bookmark");
+        JSONObject second = JSON.parseObject(invoke(ctx -> contract.queryTransByPayer(ctx, "buyer1", "2", bookmark)));
+
+        assertThat(transIDs(first)).containsExactly("group0-rule", "group1-rule");
+        assertThat(transIDs(second)).containsExactly("group2-rule");
+        assertThat(second.getString("bookmark")).isEmpty();
+        assertThat(first.getJSONArray("records").getJSONObject(0).getIntValue("payment")).isEqualTo(80);
+    }
+
+    @Test
+    void queryTransByPayerSumsRepeatedPaymentsAndSkipsDeletedTransactions() {
+        openRule("seller", "rule", TEN_HOURS, "3");
+        invoke(ctx -> contract.initCredit(ctx, "buyer0"));
+        invoke(ctx -> contract.initCredit(ctx, "buyer1"));
+        for (String groupBuyingID : Arrays.asList("group0", "group1")) {
+            invoke(ctx -> contract.initGroup(ctx, "buyer0", groupBuyingID, "rule"));
+            invoke(ctx -> contract.participate(ctx, "buyer0", groupBuyingID));
+            invoke(ctx -> contract.participate(ctx, "buyer1", groupBuyingID));
+            invoke(ctx -> contract.initTrans(ctx, "rule", groupBuyingID));
+        }
+        invoke(ctx -> {
+            ctx.getStub().delState("group1-rule");
+            return "ok";
+        });
+
+        JSONObject page = JSON.parseObject(invoke(ctx -> contract.queryTransByPayer(ctx, "buyer0", "10", "")));
+
+        assertThat(transIDs(page)).containsExactly("group0-rule");
+        assertThat(page.getJSONArray("records").getJSONObject(0).getIntValue("payment")).isEqualTo(180);
+    }
+
+    @Test
+    void reindexStateIndexesRecordsWrittenBeforeTheIndexes() {
+        putLegacy("legacyRule", "{\"sellerID\":\"oldSeller\",\"goodID\":\"good\",\"groupNum\":\"2\","
+                + "\"firstBuyerPrice\":\"100\",\"otherBuyerPrice\":\"80\",\"ruleState\":\"0\"}");
+        putLegacy("group9-legacyRule", "{\"transState\":\"0\",\"payerIDs\":\"buyer0/buyer1\",\"payee\":\"oldSeller\","
+                + "\"payments\":\"100/80\",\"receivables\":\"180\"}");
+        invoke(ctx -> contract.initCredit(ctx, "buyer0"));
+
+        List<Integer> indexed = new ArrayList<>();
+        String bookmark = "";
+        do {
+            String from = bookmark;
+            JSONObject result = JSON.parseObject(invoke(ctx -> contract.reindexState(ctx, "1", from)));
+            indexed.add(result.getIntValue("indexed"));
+            bookmark = result.getString("bookmark");
+        } while (!bookmark.isEmpty());
+
+        assertThat(indexed).containsExactly(0, 1, 1);
+        assertThat(transIDs(JSON.parseObject(invoke(ctx -> contract.queryTransByPayer(ctx, "buyer1", "10", "")))))
+                .containsExactly("group9-legacyRule");
+        assertThat(ruleIDs(JSON.parseObject(invoke(ctx -> contract.queryRulesBySeller(ctx, "oldSeller", "10", "")))))
+                .containsExactly("legacyRule");
+        assertThat(rejection(ctx -> contract.reindexState(ctx, "10", "\u0000payerTrans"))).isEqualTo("BOOKMARK_ERROR");
+    }
+
+    @Test
+    void paginatedQueriesRejectPageSizesOutOfRange() {
+        driver.openRuleWithOrders("rule", 2, 1);
+
+        assertThat(rejection(ctx -> contract.queryGroupsByRule(ctx, "rule", "0", ""))).isEqualTo("PAGE_SIZE_ERROR");
+        assertThat(rejection(ctx -> contract.queryTransByPayer(ctx, "buyer1", "-1", ""))).isEqualTo("PAGE_SIZE_ERROR");
+        assertThat(rejection(ctx -> contract.queryParticipation(ctx, "rule", "1001", ""))).isEqualTo("PAGE_SIZE_ERROR");
+        assertThat(rejection(ctx -> contract.queryRulesBySeller(ctx, "seller", "x", ""))).isEqualTo("ARG_NUM_WRONG");
+    }
+
+    @Test
+    void queryRulesBySellerPagesThroughTheRulesOfOneSeller() {
+        for (int i = 0; i < 3; i++) {
+            String discountRuleID = "rule" + i;
+            invoke(ctx -> contract.initRule(ctx, "seller", discountRuleID, "good", "2", "100", "80"));
+        }
+        invoke(ctx -> contract.initRule(ctx, "other", "otherRule", "good", "2", "100", "80"));
+
+        JSONObject first = JSON.parseObject(invoke(ctx -> contract.queryRulesBySeller(ctx, "seller", "2", "")));
+        String bookmark = first.getString("bookmark");
+        JSONObject second = JSON.parseObject(invoke(ctx -> contract.queryRulesBySeller(ctx, "seller", "2", bookmark)));
+
+        assertThat(ruleIDs(first)).containsExactly("rule0", "rule1");
+        assertThat(ruleIDs(second)).containsExactly("rule2");
+        assertThat(second.getString("bookmark")).isEmpty();
+        JSONObject record = first.getJSONArray("records").getJSONObject(0);
+        assertThat(record.getString("sellerID")).isEqualTo("seller");
+        assertThat(record).doesNotContainKey("docType");
+    }
+
+    @Test
+    void queryOpenRulesLeavesOutClosedAndTimedOutRules() {
+        openRule("seller", "short", ONE_HOUR);
+        openRule("seller", "long", TEN_HOURS);
+        invoke(ctx -> contract.initRule(ctx, "seller", "closed", "good", "2", "100", "80"));
+
+        JSONObject before = JSON.parseObject(invoke(ctx -> contract.queryOpenRules(ctx, "10", "")));
+        now += 2 * HOUR;
+        JSONObject after = JSON.parseObject(invoke(ctx -> contract.queryOpenRules(ctx, "10", "")));
+
+        assertThat(ruleIDs(before)).containsExactly("long", "short");
+        assertThat(ruleIDs(after)).containsExactly("long");
+        assertThat(after.getJSONArray("records").getJSONObject(0).getLongValue("endTime"))
+                .isEqualTo(ContractDriver.START.toEpochMilli() + 10 * HOUR);
+    }
+
+    @Test
+    void joinsAreAdmittedInTxIDOrderAndSettlementDropsTheRest() {
+        openRule("seller", "rule", TEN_HOURS, "3");
+        for (String userID : Arrays.asList("initiator", "buyerA", "buyerB", "buyerC")) {
+            invoke(ctx -> contract.initCredit(ctx, userID));
+        }
+        invoke(ctx -> contract.initGroup(ctx, "initiator", "group0", "rule"));
+        //提交顺序 c、a、b，参团顺序按txID为 a、b、c
+        driver.invoke("c", ctx -> contract.participate(ctx, "buyerC", "group0"));
+        driver.invoke("a", ctx -> contract.participate(ctx, "buyerA", "group0"));
+        driver.invoke("b", ctx -> contract.participate(ctx, "buyerB", "group0"));
+
+        assertThat(invoke(ctx -> contract.queryGroupBuying(ctx, "group0")))
+                .isEqualTo("成团人数:3, 当前人数:3, 已入团:[a, b], 未入团:[c]");
+
+        invoke(ctx -> contract.initTrans(ctx, "rule", "group0"));
+
+        assertThat(transIDs(JSON.parseObject(invoke(ctx -> contract.queryTransByPayer(ctx, "buyerB", "10", "")))))
+                .containsExactly("group0-rule");
+        assertThat(transIDs(JSON.parseObject(invoke(ctx -> contract.queryTransByPayer(ctx, "buyerC", "10", ""))))).isEmpty();
+        assertThat(invoke(ctx -> contract.queryGroupBuying(ctx, "group0")))
+                .isEqualTo("成团人数:3, 当前人数:3, 已入团:[a, b], 未入团:[]");
+        assertThat(rejection(ctx -> contract.participate(ctx, "buyerC", "group0"))).isEqualTo("NUM_EXCEED");
+    }
+
+    @Test
+    void batchParticipateCountsItsOwnJoinsAgainstTheGroupSize() {
+        openRule("seller", "rule", TEN_HOURS, "3");
+        for (String userID : Arrays.asList("initiator", "buyerA", "buyerB", "buyerC")) {
+            invoke(ctx -> contract.initCredit(ctx, userID));
+        }
+        invoke(ctx -> contract.initGroup(ctx, "initiator", "group0", "rule"));
+        invoke(ctx -> contract.initGroup(ctx, "initiator", "group1", "rule"));
+
+        JSONArray results = JSON.parseArray(driver.invoke("batch", ctx -> contract.batchParticipate(ctx,
+                "[[\"buyerA\",\"group0\"],[\"buyerB\",\"group0\"],[\"buyerC\",\"group0\"],[\"buyerC\",\"group1\"]]")));
+
+        assertThat(results).containsExactly("batch-0", "batch-1", "NUM_EXCEED", "batch-3");
+        assertThat(invoke(ctx -> contract.queryGroupBuying(ctx, "group0")))
+                .isEqualTo("成团人数:3, 当前人数:3, 已入团:[batch-0, batch-1], 未入团:[]");
+        assertThat(invoke(ctx -> contract.queryGroupBuying(ctx, "group1")))
+                .isEqualTo("成团人数:3, 当前人数:2, 已入团:[batch-3], 未入团:[]");
+    }
+
+    @Test
+    void initTransRejectsGroupsThatAreNotFull() {
+        openRule("seller", "rule", TEN_HOURS, "3");
+        invoke(ctx -> contract.initCredit(ctx, "initiator"));
+        invoke(ctx -> contract.initCredit(ctx, "buyerA"));
+        invoke(ctx -> contract.initGroup(ctx, "initiator", "group0", "rule"));
+        invoke(ctx -> contract.participate(ctx, "buyerA", "group0"));
+
+        assertThat(rejection(ctx -> contract.initTrans(ctx, "rule", "group0"))).isEqualTo("GROUP_BUYING_NOT_SUCCESS");
+    }
+
+    @Test
+    void creditChangesCountBeforeTheyAreCompacted() {
+        openRule("seller", "rule", TEN_HOURS, "3");
+        invoke(ctx -> contract.initCredit(ctx, "initiator"));
+        invoke(ctx -> contract.initCredit(ctx, "buyer0"));
+        invoke(ctx -> contract.initGroup(ctx, "initiator", "group0", "rule"));
+
+        invoke(ctx -> contract.changeCredit(ctx, "buyer0", "-50"));
+        invoke(ctx -> contract.changeCredit(ctx, "buyer0", "-35"));
+
+        assertThat(invoke(ctx -> contract.queryCredit(ctx, "buyer0"))).endsWith("：15");
+        assertThat(rejection(ctx -> contract.participate(ctx, "buyer0", "group0"))).isEqualTo("CREDIT_TOO_LOW");
+        assertThat(rejection(ctx -> contract.initGroup(ctx, "buyer0", "group1", "rule"))).isEqualTo("CREDIT_TOO_LOW");
+    }
+
+    @Test
+    void creditIsClampedAtZeroWhateverTheCompactionOrder() {
+        invoke(ctx -> contract.initCredit(ctx, "paged"));
+        invoke(ctx -> contract.initCredit(ctx, "whole"));
+        for (String change : Arrays.asList("-150", "30", "40")) {
+            invoke(ctx -> contract.changeCredit(ctx, "paged", change));
+            invoke(ctx -> contract.changeCredit(ctx, "whole", change));
+        }
+
+        assertThat(invoke(ctx -> contract.queryCredit(ctx, "paged"))).endsWith("：20");
+        invoke(ctx -> contract.changeCredit(ctx, "paged", "-100"));
+        assertThat(invoke(ctx -> contract.queryCredit(ctx, "paged"))).endsWith("：0");
+        invoke(ctx -> contract.changeCredit(ctx, "paged", "100"));
+
+        JSONObject first = JSON.parseObject(invoke(ctx -> contract.compactCredit(ctx, "paged", "1")));
+        JSONObject second = JSON.parseObject(invoke(ctx -> contract.compactCredit(ctx, "paged", "10")));
+        JSONObject whole = JSON.parseObject(invoke(ctx -> contract.compactCredit(ctx, "whole", "10")));
+
+        assertThat(first.getIntValue("folded")).isEqualTo(1);
+        assertThat(first.getBooleanValue("more")).isTrue();
+        assertThat(second.getIntValue("folded")).isEqualTo(4);
+        assertThat(second.getBooleanValue("more")).isFalse();
+        assertThat(whole.getIntValue("folded")).isEqualTo(3);
+        assertThat(invoke(ctx -> contract.queryCredit(ctx, "paged"))).endsWith("：20");
+        assertThat(invoke(ctx -> contract.queryCredit(ctx, "whole"))).endsWith("：20");
+        assertThat(rejection(ctx -> contract.compactCredit(ctx, "paged", "0"))).isEqualTo("PAGE_SIZE_ERROR");
+        assertThat(rejection(ctx -> contract.compactCredit(ctx, "nobody", "10"))).isEqualTo("USER_NOT_EXISTING");
+    }
+
+    @Test
+    void recordsRoundTripThroughTheBinaryFormat() {
+        GroupBuying groupBuying = new GroupBuying();
+        groupBuying.setUserID("用户");
+        groupBuying.setSellerID("seller");
+        groupBuying.setGroupBuyingID("group0");
+        groupBuying.setInitTime(-1L);
+        groupBuying.setGroupNum(300);
+        groupBuying.setGoodID("good");
+        groupBuying.setCurrentNum(1);
+        groupBuying.setDiscountRuleID("rule");
+        TradeTransaction transaction = new TradeTransaction();
+        transaction.setTransState(-1);
+        transaction.getPayerIDs().addAll(Arrays.asList("buyer0", "buyer1"));
+        transaction.getPayments().addAll(Arrays.asList(100, 80));
+        transaction.setPayee("seller");
+        transaction.setReceivables(180);
+
+        GroupBuying decoded = GroupBuying.fromBytes(groupBuying.toBytes());
+        TradeTransaction decodedTransaction = TradeTransaction.fromBytes(transaction.toBytes());
+
+        assertThat(decoded).usingRecursiveComparison().isEqualTo(groupBuying);
+        assertThat(decodedTransaction).usingRecursiveComparison().isEqualTo(transaction);
+        assertThat(GroupBuying.fromBytes(transaction.toBytes())).isNull();
+        assertThat(TradeTransaction.fromBytes(groupBuying.toBytes())).isNull();
+    }
+
+    @Test
+    void legacyJsonRecordsAreStillServed() {
+        long endTime = now + HOUR;
+        putLegacy("rule", "{\"sellerID\":\"seller\",\"goodID\":\"good\",\"groupNum\":\"2\",\"firstBuyerPrice\":\"100\","
+                + "\"otherBuyerPrice\":\"80\",\"ruleState\":\"1\",\"duration\":\"3600000\",\"startTime\":\"" + now
+                + "\",\"endTime\":\"" + endTime + "\",\"orderNum\":\"1\",\"orderIDs\":\"group0\"}");
+        putLegacy("group0", "{\"userID\":\"buyer0\",\"sellerID\":\"seller\",\"groupBuyingID\":\"group0\",\"initTime\":\"" + now
+                + "\",\"groupNum\":\"2\",\"goodID\":\"good\",\"currentNum\":\"1\",\"discountRuleID\":\"rule\"}");
+        invoke(ctx -> contract.initCredit(ctx, "buyer0"));
+        invoke(ctx -> contract.initCredit(ctx, "buyer1"));
+
+        assertThat(invoke(ctx -> contract.queryState(ctx, "rule"))).contains("开放");
+        assertThat(invoke(ctx -> contract.participate(ctx, "buyer1", "group0"))).isEqualTo("ok");
+        assertThat(invoke(ctx -> contract.initTrans(ctx, "rule", "group0"))).isEqualTo("ok");
+    }
+
+    @Test
+    void recordsOfAnotherTypeAreRejectedAsMissing() {
+        driver.openRuleWithOrders("rule", 2, 1);
+        //旧版JSON规则缺少拼单的必需字段
+        putLegacy("legacyRule", "{\"sellerID\":\"seller\",\"goodID\":\"good\",\"groupNum\":\"2\","
+                + "\"firstBuyerPrice\":\"100\",\"otherBuyerPrice\":\"80\",\"ruleState\":\"0\"}");
+
+        assertThat(rejection(ctx -> contract.participate(ctx, "buyer1", "rule"))).isEqualTo("GROUP_BUYING_NOT_EXIST");
+        assertThat(rejection(ctx -> contract.participate(ctx, "buyer1", "legacyRule"))).isEqualTo("GROUP_BUYING_NOT_EXIST");
+        assertThat(rejection(ctx -> contract.initGroup(ctx, "buyer0", "group1", "group0"))).isEqualTo("RULE_NOT_EXIST");
+        assertThat(rejection(ctx -> contract.queryState(ctx, "group0"))).isEqualTo("DISCOUNTRULE_NOT_EXISTING");
+        assertThat(rejection(ctx -> contract.queryTrans(ctx, "group0"))).isEqualTo("Transaction_NOT_EXIST");
+    }
+
+    @Test
+    void creditBatchesReportFailedItemsAndApplyTheRest() {
+        JSONArray initialized = JSON.parseArray(invoke(ctx -> contract.batchInitCredit(ctx, "[\"buyer0\",\" \",\"buyer1\"]")));
+        JSONArray changed = JSON.parseArray(invoke(ctx -> contract.batchChangeCredit(ctx,
+                "[[\"buyer0\",\"-10\"],[\"nobody\",\"5\"],[\"\",\"5\"],[\"buyer0\",\"x\"],[\"buyer0\",\"-5\"]]")));
+
+        assertThat(initialized).containsExactly("ok", "USER_ID_BLANK", "ok");
+        assertThat(changed).containsExactly("ok", "USER_NOT_EXISTING", "USER_ID_BLANK", "ARG_NUM_WRONG", "ok");
+        assertThat(invoke(ctx -> contract.queryCredit(ctx, "buyer0"))).endsWith("：85");
+        assertThat(invoke(ctx -> contract.queryCredit(ctx, "buyer1"))).endsWith("：100");
+        assertThat(rejection(ctx -> contract.queryCredit(ctx, " "))).isEqualTo("USER_NOT_EXISTING");
+        assertThat(rejection(ctx -> contract.batchChangeCredit(ctx, "[[\"nobody\",\"5\"]]"))).isEqualTo("BATCH_REJECTED");
+    }
+
+    @Test
+    void batchesOfMoreThanTenThousandItemsAreRejected() {
+        JSONArray userIDs = new JSONArray();
+        JSONArray changes = new JSONArray();
+        for (int i = 0; i <= 10000; i++) {
+            userIDs.add("buyer" + i);
+            changes.add(new JSONArray(Arrays.asList("buyer" + i, "1")));
+        }
+
+        assertThat(rejection(ctx -> contract.batchInitCredit(ctx, userIDs.toJSONString()))).isEqualTo("BATCH_TOO_LARGE");
+        assertThat(rejection(ctx -> contract.batchChangeCredit(ctx, changes.toJSONString()))).isEqualTo("BATCH_TOO_LARGE");
+        assertThat(rejection(ctx -> contract.queryCredit(ctx, "buyer0"))).isEqualTo("USER_NOT_EXISTING");
+    }
+
+    @Test
+    void salesStatsCountEverySettledGroupOnceAndRollUpInPages() {
+        driver.openRuleWithOrders("rule", 2, 3);
+        for (int i = 0; i < 3; i++) {
+            String groupBuyingID = "group" + i;
+            invoke(ctx -> contract.initTrans(ctx, "rule", groupBuyingID));
+        }
+
+        assertThat(rejection(ctx -> contract.initTrans(ctx, "rule", "group0"))).isEqualTo("Transaction_EXIST");
+        JSONObject pending = JSON.parseObject(invoke(ctx -> contract.querySellerStats(ctx, "seller")));
+        //卖家与规则各有三条增量
+        JSONObject first = JSON.parseObject(invoke(ctx -> contract.rollupStats(ctx, "4")));
+        JSONObject second = JSON.parseObject(invoke(ctx -> contract.rollupStats(ctx, "4")));
+        JSONObject seller = JSON.parseObject(invoke(ctx -> contract.querySellerStats(ctx, "seller")));
+        JSONObject rule = JSON.parseObject(invoke(ctx -> contract.queryRuleStats(ctx, "rule")));
+
+        assertThat(pending.getLongValue("groups")).isEqualTo(3);
+        assertThat(pending.getIntValue("pendingDeltas")).isEqualTo(3);
+        assertThat(first.getIntValue("folded")).isEqualTo(4);
+        assertThat(first.getBooleanValue("more")).isTrue();
+        assertThat(second.getIntValue("folded")).isEqualTo(2);
+        assertThat(second.getBooleanValue("more")).isFalse();
+        for (JSONObject stats : Arrays.asList(seller, rule)) {
+            assertThat(stats.getLongValue("groups")).isEqualTo(3);
+            assertThat(stats.getLongValue("buyers")).isEqualTo(6);
+            assertThat(stats.getLongValue("receivables")).isEqualTo(3 * 180);
+            assertThat(stats.getIntValue("pendingDeltas")).isZero();
+        }
+    }
+
+    @Test
+    void exportedStateImportsIntoAnEmptyLedgerUnchanged() {
+        driver.openRuleWithOrders("rule", 3, 2);
+        invoke(ctx -> contract.initTrans(ctx, "rule", "group0"));
+        invoke(ctx -> contract.changeCredit(ctx, "buyer1", "-5"));
+        InMemoryChaincodeStub target = new InMemoryChaincodeStub();
+        ContractDriver importer = new ContractDriver(target, contract);
+
+        JSONArray records = new JSONArray();
+        for (String family : Arrays.asList("simple", "participant", "ruleOrder", "ruleIndex", "ruleStatus", "payerTrans",
+                "credit", "stats", "statsDelta")) {
+            String bookmark = "";
+            do {
+                String from = bookmark;
+                JSONObject page = JSON.parseObject(invoke(ctx -> contract.exportState(ctx, family, "3", from)));
+                records.addAll(page.getJSONArray("records"));
+                bookmark = page.getString("bookmark");
+            } while (!bookmark.isEmpty());
+        }
+        String payload = records.toJSONString();
+
+        Throwable refused = catchThrowable(() -> importer.invoke(ctx -> contract.importState(ctx, payload)));
+        target.setCreator("Org1MSP", InMemoryChaincodeStub.STATE_ADMIN_CERT);
+        JSONObject imported = JSON.parseObject(importer.invoke(ctx -> contract.importState(ctx, payload)));
+
+        assertThat(new String(((ChaincodeException) refused).getPayload(), StandardCharsets.UTF_8)).isEqualTo("NOT_STATE_ADMIN");
+        assertThat(imported.getIntValue("imported")).isEqualTo(driver.getStub().getWorldState().size());
+        assertThat(encoded(target.getWorldState())).isEqualTo(encoded(driver.getStub().getWorldState()));
+        assertThat(rejection(ctx -> contract.exportState(ctx, "joinLog", "10", ""))).isEqualTo("KEY_FAMILY_NOT_EXIST");
+    }
+
+    private void openRule(final String sellerID, final String discountRuleID, final String duration) {
+        openRule(sellerID, discountRuleID, duration, "2");
+    }
+
+    private void openRule(final String sellerID, final String discountRuleID, final String duration, final String groupNum) {
+        invoke(ctx -> contract.initRule(ctx, sellerID, discountRuleID, "good", groupNum, "100", "80"));
+        invoke(ctx -> contract.open(ctx, discountRuleID, duration));
+    }
+
+    /**
+     * Writes a record in the JSON format used before the binary encoding
+     */
+    private void putLegacy(final String key, final String json) {
+        invoke(ctx -> {
+            ctx.getStub().putStringState(key, json);
+            return "ok";
+        });
+    }
+
+    private String invoke(final Function<Context, String> function) {
+        return driver.invoke(function);
+    }
+
+    /**
+     * @return the error code the call is rejected with
+     */
+    private String rejection(final Function<Context, String> function) {
+        Throwable thrown = catchThrowable(() -> driver.invoke(function));
+        assertThat(thrown).isInstanceOf(ChaincodeException.class);
+        return new String(((ChaincodeException) thrown).getPayload(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> encoded(final Map<String, byte[]> state) {
+        Map<String, String> encoded = new TreeMap<>();
+        state.forEach((key, value) -> encoded.put(key, Base64.getEncoder().encodeToString(value)));
+        return encoded;
+    }
+
+    private static List<String> ruleIDs(final JSONObject page) {
+        return values(page, "discountRuleID");
+    }
+
+    private static List<String> transIDs(final JSONObject page) {
+        return values(page, "transID");
+    }
+
+    private static List<String> values(final JSONObject page, final String field) {
+        List<String> values = new ArrayList<>();
+        JSONArray records = page.getJSONArray("records");
+        for (int i = 0; i < records.size(); i++) {
+            values.add(records.getJSONObject(i).getString(field));
+        }
+        return values;
+    }
+}